@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Instrumentation;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.test.InstrumentationTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long MainActivity takes from being created to showing forecast rows.  The
+ * activity is started in the test's process, so this leaves out process creation; for a true
+ * cold start kill the app and use {@code adb shell am start -W} with the "Fully drawn" time the
+ * activity reports.
+ */
+public class StartupBenchmark extends InstrumentationTestCase {
+    private static final String LOG_TAG = StartupBenchmark.class.getSimpleName();
+    private static final int RUNS = 5;
+    private static final int DAYS = 14;
+    private static final long CONTENT_TIMEOUT_MS = 10000;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        insertForecast(getInstrumentation().getTargetContext());
+    }
+
+    public void testTimeToFirstContent() throws Exception {
+        Instrumentation instrumentation = getInstrumentation();
+        long[] times = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            Intent intent = new Intent(instrumentation.getTargetContext(), MainActivity.class)
+                    .addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+            final MainActivity activity = (MainActivity) instrumentation.startActivitySync(intent);
+            new PollingCheck(CONTENT_TIMEOUT_MS) {
+                @Override
+                protected boolean check() {
+                    return activity.getStartupTasks().getFirstContentTime() != -1;
+                }
+            }.run();
+            times[i] = activity.getStartupTasks().getFirstContentTime();
+            activity.finish();
+            instrumentation.waitForIdleSync();
+        }
+        Arrays.sort(times);
+        Log.i(LOG_TAG, "Time to first content over " + RUNS + " runs: median "
+                + times[RUNS / 2] + "ms, min " + times[0] + "ms, max " + times[RUNS - 1] + "ms");
+    }
+
+    /**
+     * Makes sure the preferred location has a forecast to show, starting today.
+     */
+    private static void insertForecast(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        long locationId;
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        if (cursor.moveToFirst()) {
+            locationId = cursor.getLong(0);
+        } else {
+            ContentValues location = new ContentValues();
+            location.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+            location.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+            location.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, 37.386);
+            location.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, -122.084);
+            locationId = ContentUris.parseId(context.getContentResolver().insert(
+                    WeatherContract.LocationEntry.CONTENT_URI, location));
+        }
+        cursor.close();
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+            day.put(WeatherContract.WeatherEntry.COLUMN_DATE, dayTime.setJulianDay(julianStartDay + i));
+            day.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, 270);
+            day.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, 60);
+            day.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, 1012);
+            day.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 21 + i % 3);
+            day.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, 11 + i % 3);
+            day.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+            day.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+            day.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i] = day;
+        }
+        context.getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, days);
+    }
+}
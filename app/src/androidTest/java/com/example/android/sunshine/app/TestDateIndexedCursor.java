@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+public class TestDateIndexedCursor extends AndroidTestCase {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+
+    private static MatrixCursor createCursor(long... dates) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id", "date"});
+        for (int i = 0; i < dates.length; i++) {
+            cursor.addRow(new Object[]{i, dates[i]});
+        }
+        return cursor;
+    }
+
+    public void testFindsSortedDates() {
+        long[] dates = new long[90];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = TEST_DATE + i * DAY_IN_MILLIS;
+        }
+        DateIndexedCursor cursor = new DateIndexedCursor(createCursor(dates), 1);
+        for (int i = 0; i < dates.length; i++) {
+            assertEquals(i, cursor.getPositionForDate(dates[i]));
+        }
+        assertEquals(-1, cursor.getPositionForDate(TEST_DATE - DAY_IN_MILLIS));
+        assertEquals(-1, cursor.getPositionForDate(TEST_DATE + 1));
+        assertEquals("Error: Indexing should leave the cursor before the first row",
+                -1, cursor.getPosition());
+        cursor.close();
+    }
+
+    public void testFindsUnsortedDates() {
+        DateIndexedCursor cursor = new DateIndexedCursor(createCursor(
+                TEST_DATE + 2 * DAY_IN_MILLIS, TEST_DATE, TEST_DATE + DAY_IN_MILLIS), 1);
+        assertEquals(0, cursor.getPositionForDate(TEST_DATE + 2 * DAY_IN_MILLIS));
+        assertEquals(1, cursor.getPositionForDate(TEST_DATE));
+        assertEquals(2, cursor.getPositionForDate(TEST_DATE + DAY_IN_MILLIS));
+        cursor.close();
+    }
+
+    public void testEmptyCursor() {
+        DateIndexedCursor cursor = new DateIndexedCursor(createCursor(), 1);
+        assertEquals(-1, cursor.getPositionForDate(TEST_DATE));
+        cursor.close();
+    }
+}
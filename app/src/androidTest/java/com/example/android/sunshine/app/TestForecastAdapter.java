@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.view.View;
+import android.widget.AbsListView;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastAdapter extends AndroidTestCase {
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final String TEST_LOCATION = "99705";
+    private static final int DAYS = 10;
+    private static final int SELECTED_POSITION = 3;
+
+    private long mLocationRowId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        mLocationRowId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private void insertDays() {
+        ContentValues[] days = new ContentValues[DAYS];
+        for (int i = 0; i < DAYS; i++) {
+            ContentValues day = new ContentValues();
+            day.put(WeatherEntry.COLUMN_LOC_KEY, mLocationRowId);
+            day.put(WeatherEntry.COLUMN_DATE, TEST_DATE + i * DAY_IN_MILLIS);
+            day.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+            day.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+            day.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+            day.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + i);
+            day.put(WeatherEntry.COLUMN_MIN_TEMP, 65 - i);
+            day.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+            day.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+            day.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+            days[i] = day;
+        }
+        assertEquals(DAYS, mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, days));
+    }
+
+    private Cursor queryForecast() {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TEST_LOCATION, TEST_DATE),
+                ForecastFragment.FORECAST_COLUMNS,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC"
+        );
+    }
+
+    /*
+        A sync writes the same days again, which replaces their rows and gives them new row ids.
+        The selected day should still be selected once the adapter has the new cursor.
+     */
+    public void testSelectionSurvivesReinsert() {
+        insertDays();
+        Cursor before = queryForecast();
+        assertEquals(DAYS, before.getCount());
+
+        ForecastAdapter adapter = new ForecastAdapter(mContext,
+                new ForecastAdapter.ForecastAdapterOnClickHandler() {
+                    @Override
+                    public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+                    }
+                }, new View(mContext), AbsListView.CHOICE_MODE_SINGLE);
+        RecyclerView recyclerView = new RecyclerView(mContext);
+        recyclerView.setLayoutManager(new LinearLayoutManager(mContext));
+        recyclerView.setAdapter(adapter);
+        adapter.swapCursor(before);
+        recyclerView.measure(
+                View.MeasureSpec.makeMeasureSpec(480, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(4000, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, 480, 4000);
+
+        RecyclerView.ViewHolder vh = recyclerView.findViewHolderForAdapterPosition(SELECTED_POSITION);
+        assertNotNull("Error: The selected day should have been laid out", vh);
+        adapter.selectView(vh);
+        assertEquals(SELECTED_POSITION, adapter.getSelectedItemPosition());
+        long selectedId = adapter.getItemId(SELECTED_POSITION);
+
+        insertDays();
+        Cursor after = queryForecast();
+        assertEquals(DAYS, after.getCount());
+        adapter.swapCursor(after);
+        before.close();
+
+        assertEquals("Error: Re-inserting a day should not change its item id",
+                selectedId, adapter.getItemId(SELECTED_POSITION));
+        assertEquals("Error: The selection should survive the same days being inserted again",
+                SELECTED_POSITION, adapter.getSelectedItemPosition());
+        assertEquals(WeatherContract.normalizeDate(TEST_DATE + SELECTED_POSITION * DAY_IN_MILLIS),
+                selectedId);
+        after.close();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestLocationEditTextPreference extends AndroidTestCase {
+    public void testRecognizesPostalCodes() {
+        String[] postalCodes = {"94043", "94043-1351", "SW1A 1AA", "K1A 0B1", "00-950",
+                "1234 AB", "D02 X285"};
+        for (String postalCode : postalCodes) {
+            assertTrue("Error: " + postalCode + " should be taken for a postal code",
+                    LocationEditTextPreference.isPostalCode(postalCode));
+        }
+    }
+
+    public void testRejectsMisspelledCities() {
+        String[] locations = {"London", "Lodnon 1", "Paris 75001", "1", ""};
+        for (String location : locations) {
+            assertFalse("Error: " + location + " should not be taken for a postal code",
+                    LocationEditTextPreference.isPostalCode(location));
+        }
+    }
+}
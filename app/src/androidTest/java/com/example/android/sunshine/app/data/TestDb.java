@@ -91,6 +91,9 @@ public class TestDb extends AndroidTestCase {
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
         locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_FETCHED_AT);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_EXPIRES_AT);
+        locationColumnHashSet.add(WeatherContract.LocationEntry.COLUMN_GEOHASH);
 
         int columnNameIndex = c.getColumnIndex("name");
         do {
@@ -176,6 +179,126 @@ public class TestDb extends AndroidTestCase {
         dbHelper.close();
     }
 
+    public void testCompactWeatherTable() {
+        final String name = "compact_test.db";
+        mContext.deleteDatabase(name);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, name, true);
+        try {
+            assertTrue("Error: A new database should get the compact layout",
+                    dbHelper.isCompactStorage());
+            SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+            long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                    TestUtilities.createNorthPoleLocationValues());
+            assertTrue(locationRowId != -1);
+
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, 75.26);
+            ContentValues stored = new ContentValues(weatherValues);
+            CompactWeatherStorage.encode(db, stored);
+            assertFalse("Error: The description should move to the dictionary",
+                    stored.containsKey(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+            assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, stored) != -1);
+
+            Cursor cursor = CompactWeatherStorage.sWeatherByLocationSettingQueryBuilder.query(db,
+                    CompactWeatherStorage.getDefaultProjection(true), null, null, null, null,
+                    null);
+            assertTrue("Error: No Records returned from weather query", cursor.moveToFirst());
+            assertEquals("Asteroids", cursor.getString(cursor.getColumnIndex(
+                    WeatherContract.WeatherEntry.COLUMN_SHORT_DESC)));
+            assertEquals("Error: Values should come back to a tenth", 75.3, cursor.getDouble(
+                    cursor.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP)), 1e-9);
+            for (String column : CompactWeatherStorage.SCALED_COLUMNS) {
+                assertEquals(column, weatherValues.getAsDouble(column),
+                        cursor.getDouble(cursor.getColumnIndex(column)), 0.05);
+            }
+            assertEquals(TestUtilities.TEST_LOCATION, cursor.getString(cursor.getColumnIndex(
+                    WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING)));
+            cursor.close();
+        } finally {
+            dbHelper.close();
+            mContext.deleteDatabase(name);
+        }
+    }
+
+
+    /*
+        A schema upgrade may throw away the cached weather, but not the history and the climate
+        rollups, which can't be fetched again, nor the locations they belong to.
+     */
+    public void testUpgradeKeepsHistory() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        long locationRowId = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        assertTrue(locationRowId != -1);
+        assertTrue(db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                TestUtilities.createWeatherValues(locationRowId)) != -1);
+
+        ContentValues historyValues = new ContentValues();
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_LOC_KEY, locationRowId);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_START_DATE, TestUtilities.TEST_DATE);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_END_DATE, TestUtilities.TEST_DATE);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_DAY_COUNT, 1);
+        historyValues.put(WeatherContract.HistoryEntry.COLUMN_DATA, new byte[]{1, 2, 3});
+        assertTrue(db.insert(WeatherContract.HistoryEntry.TABLE_NAME, null, historyValues) != -1);
+
+        ContentValues climateValues = new ContentValues();
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LOC_KEY, locationRowId);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_PERIOD,
+                WeatherContract.ClimateEntry.PERIOD_ALL);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_BUCKET, 0);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_FIRST_DATE, TestUtilities.TEST_DATE);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LAST_DATE, TestUtilities.TEST_DATE);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_DAY_COUNT, 1);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_HIGH_SUM, 75);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_HIGH_MIN, 75);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_HIGH_MAX, 75);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_HIGH_HISTOGRAM, new byte[0]);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LOW_SUM, 65);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LOW_MIN, 65);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LOW_MAX, 65);
+        climateValues.put(WeatherContract.ClimateEntry.COLUMN_LOW_HISTOGRAM, new byte[0]);
+        assertTrue(db.insert(WeatherContract.ClimateEntry.TABLE_NAME, null, climateValues) != -1);
+
+        // Upgrading from the current schema takes the same path as the next version bump will
+        dbHelper.onUpgrade(db, db.getVersion(), db.getVersion());
+
+        assertEquals("Error: The cached weather should have been discarded", 0,
+                count(db, WeatherContract.WeatherEntry.TABLE_NAME));
+        assertEquals("Error: The history should have been kept", 1,
+                count(db, WeatherContract.HistoryEntry.TABLE_NAME));
+        assertEquals("Error: The climate rollups should have been kept", 1,
+                count(db, WeatherContract.ClimateEntry.TABLE_NAME));
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry._ID}, null, null, null, null, null);
+        assertTrue("Error: The location should have been kept", cursor.moveToFirst());
+        assertEquals(locationRowId, cursor.getLong(0));
+        cursor.close();
+
+        // The stored location is still suggested, and new ones still reach the city search
+        cursor = db.query(WeatherContract.CitySearchEntry.TABLE_NAME, null,
+                WeatherContract.CitySearchEntry.COLUMN_COUNTRY + " = ''", null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        otherLocation.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, "99701");
+        assertTrue(db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, otherLocation) != -1);
+        cursor = db.query(WeatherContract.CitySearchEntry.TABLE_NAME, null,
+                WeatherContract.CitySearchEntry.COLUMN_COUNTRY + " = ''", null, null, null, null);
+        assertEquals(2, cursor.getCount());
+        cursor.close();
+
+        dbHelper.close();
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.query(table, null, null, null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
 
     /*
         Students: This is a helper method for the testWeatherTable quiz. You can move your
@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.util.Set;
+
+public class TestGeoHash extends AndroidTestCase {
+
+    public void testEncode() {
+        assertEquals("u4pruydqqvj", GeoHash.encode(57.64911, 10.40744, 11));
+        assertEquals("Error: Shorter geohashes should be prefixes of longer ones",
+                "u4pru", GeoHash.encode(57.64911, 10.40744, 5));
+    }
+
+    public void testNeighbourhood() {
+        Set<String> cells = GeoHash.neighbourhood(37.4219983, -122.084, 5);
+        assertEquals(9, cells.size());
+        assertEquals("Error: The point's own cell should come first",
+                GeoHash.encode(37.4219983, -122.084, 5), cells.iterator().next());
+
+        // Across the antimeridian the neighbours wrap around
+        cells = GeoHash.neighbourhood(0, 179.99, 2);
+        assertTrue(cells.contains(GeoHash.encode(0, -179.99, 2)));
+    }
+
+    public void testPrecisionForRadius() {
+        int precision = GeoHash.precisionForRadius(37.42, 1000);
+        assertTrue("Error: Cells should be at least the radius high",
+                GeoHash.cellHeightDegrees(precision) * 111000 >= 1000);
+        assertTrue("Error: A smaller radius should allow finer cells",
+                GeoHash.precisionForRadius(37.42, 100) > precision);
+        assertTrue(GeoHash.precisionForRadius(37.42, 10000000) >= 1);
+    }
+
+    public void testPrefixEnd() {
+        String cell = GeoHash.encode(64.7488, -147.353, 5);
+        String inside = GeoHash.encode(64.7488, -147.353, GeoHash.MAX_PRECISION);
+        assertTrue(inside.compareTo(cell) >= 0);
+        assertTrue(inside.compareTo(GeoHash.prefixEnd(cell)) < 0);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.test.AndroidTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+public class TestHistoryBlockCodec extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+
+    public void testRoundTrip() throws IOException {
+        long[] dates = {
+                TestUtilities.TEST_DATE,
+                TestUtilities.TEST_DATE + DAY_IN_MILLIS,
+                // A daylight saving change
+                TestUtilities.TEST_DATE + 2 * DAY_IN_MILLIS - HOUR_IN_MILLIS,
+                TestUtilities.TEST_DATE + 3 * DAY_IN_MILLIS - HOUR_IN_MILLIS,
+                // A gap in the data
+                TestUtilities.TEST_DATE + 10 * DAY_IN_MILLIS - HOUR_IN_MILLIS
+        };
+        int[] weatherIds = {800, 800, 500, 321, 800};
+        double[][] values = {
+                {-3.2, 5.5, 81, 1013.2, 4.1, 270},
+                {-3.2, 5.6, 80, 1013.3, 4.1, 270},
+                {-10.7, -1.4, 95, 996.8, 12.3, 0},
+                {0, 0.1, 100, 1040, 0, 359.5},
+                {21.9, 34.2, 12, 1009.1, 2.2, 90}
+        };
+
+        HistoryBlockCodec.Writer writer = new HistoryBlockCodec.Writer(values[0].length);
+        for (int i = 0; i < dates.length; i++) {
+            writer.add(dates[i], weatherIds[i], "weather " + weatherIds[i], values[i]);
+        }
+        byte[] block = writer.toByteArray();
+
+        HistoryBlockCodec.Reader reader = new HistoryBlockCodec.Reader(block);
+        assertEquals(dates.length, reader.getCount());
+        for (int i = 0; i < dates.length; i++) {
+            assertTrue(reader.next());
+            assertEquals(dates[i], reader.getDate());
+            assertEquals(weatherIds[i], reader.getWeatherId());
+            assertEquals("weather " + weatherIds[i], reader.getDescription());
+            for (int column = 0; column < values[i].length; column++) {
+                assertEquals(values[i][column], reader.getValue(column), 1e-9);
+            }
+        }
+        assertFalse(reader.next());
+    }
+
+    public void testCompression() throws IOException {
+        HistoryBlockCodec.Writer writer = new HistoryBlockCodec.Writer(6);
+        for (int i = 0; i < 31; i++) {
+            writer.add(TestUtilities.TEST_DATE + i * DAY_IN_MILLIS, 800, "Clear",
+                    new double[]{10 + i % 3, 20 - i % 4, 60, 1013.2, 3.5, 180});
+        }
+        // Stored as rows, the doubles alone would take 48 bytes a day
+        assertTrue("Error: A month of days should pack into a few bytes a day",
+                writer.toByteArray().length < 31 * 8);
+    }
+
+    public void testTruncatedBlock() {
+        HistoryBlockCodec.Writer writer = new HistoryBlockCodec.Writer(1);
+        writer.add(TestUtilities.TEST_DATE, 800, "Clear", new double[]{1});
+        byte[] block = writer.toByteArray();
+        try {
+            new HistoryBlockCodec.Reader(Arrays.copyOf(block, block.length - 1));
+            fail("Error: A truncated block should not be readable");
+        } catch (IOException expected) {
+        }
+    }
+}
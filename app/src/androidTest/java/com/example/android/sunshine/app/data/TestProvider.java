@@ -16,6 +16,7 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
@@ -30,6 +31,8 @@ import android.util.Log;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -61,6 +64,16 @@ public class TestProvider extends AndroidTestCase {
                 null,
                 null
         );
+        mContext.getContentResolver().delete(
+                WeatherContract.HistoryEntry.CONTENT_URI,
+                null,
+                null
+        );
+        mContext.getContentResolver().delete(
+                WeatherContract.ClimateEntry.CONTENT_URI,
+                null,
+                null
+        );
 
         Cursor cursor = mContext.getContentResolver().query(
                 WeatherEntry.CONTENT_URI,
@@ -445,6 +458,282 @@ public class TestProvider extends AndroidTestCase {
         return returnContentValues;
     }
 
+    /*
+        Archiving should move the days of past months out of the weather table into a single
+        block, and reading the history back should give the same days to a tenth.
+     */
+    public void testArchiveHistory() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        long lastDate = bulkInsertContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherEntry.COLUMN_DATE);
+        // Nothing is archived until its month is over
+        assertEquals(0, mContext.getContentResolver().update(
+                WeatherContract.HistoryEntry.buildArchiveUri(lastDate), new ContentValues(),
+                null, null));
+        long nextMonth = lastDate + 1000L * 60 * 60 * 24 * 31;
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, mContext.getContentResolver().update(
+                WeatherContract.HistoryEntry.buildArchiveUri(nextMonth), new ContentValues(),
+                null, null));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: Archived days should leave the weather table", 0, cursor.getCount());
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(WeatherContract.HistoryEntry.CONTENT_URI,
+                null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: A month should be archived as one block", 1, cursor.getCount());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(
+                cursor.getColumnIndex(WeatherContract.HistoryEntry.COLUMN_DAY_COUNT)));
+        cursor.close();
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.HistoryEntry.buildHistoryLocationWithRange(
+                        TestUtilities.TEST_LOCATION, 0, nextMonth),
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        for (ContentValues expected : bulkInsertContentValues) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(WeatherContract.normalizeDate(expected.getAsLong(WeatherEntry.COLUMN_DATE)),
+                    cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE)));
+            assertEquals(expected.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+            for (String column : HistoryArchive.VALUE_COLUMNS) {
+                assertEquals(column, expected.getAsDouble(column),
+                        cursor.getDouble(cursor.getColumnIndex(column)), 0.05);
+            }
+        }
+        cursor.close();
+
+        // A range in the middle only reads the days in it
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.HistoryEntry.buildHistoryLocationWithRange(
+                        TestUtilities.TEST_LOCATION,
+                        bulkInsertContentValues[2].getAsLong(WeatherEntry.COLUMN_DATE),
+                        bulkInsertContentValues[4].getAsLong(WeatherEntry.COLUMN_DATE)),
+                new String[]{WeatherEntry.COLUMN_DATE}, null, null, null);
+        assertEquals(3, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Reading expired data with the revalidating read mode should serve the stored rows just
+        like a plain read, and the freshness columns should make the round trip.
+     */
+    public void testRevalidatingQuery() {
+        ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+        long fetchedAt = TestUtilities.TEST_DATE;
+        locationValues.put(LocationEntry.COLUMN_FETCHED_AT, fetchedAt);
+        locationValues.put(LocationEntry.COLUMN_EXPIRES_AT, fetchedAt + 1);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        Cursor locationCursor = mContext.getContentResolver().query(
+                LocationEntry.CONTENT_URI,
+                null,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testRevalidatingQuery. Error validating LocationEntry.",
+                locationCursor, locationValues);
+
+        ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+        Cursor weatherCursor = mContext.getContentResolver().query(
+                WeatherContract.buildRevalidatingUri(
+                        WeatherEntry.buildWeatherLocationWithStartDate(
+                                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE)),
+                null,
+                null,
+                null,
+                null
+        );
+        TestUtilities.validateCursor("testRevalidatingQuery. Error validating stale read.",
+                weatherCursor, weatherValues);
+    }
+
+    /*
+        Past days should be rolled up once, however often their rows are inserted, and the
+        statistics read back a bucket per row.
+     */
+    public void testClimateRollup() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues);
+
+        long firstDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+        long lastDate = bulkInsertContentValues[BULK_INSERT_RECORDS_TO_INSERT - 1]
+                .getAsLong(WeatherEntry.COLUMN_DATE);
+
+        // The highs are 75 to 84 and the lows 65 down to 56
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.ClimateEntry.buildPercentileUri(
+                        WeatherContract.ClimateEntry.buildClimateUri(TestUtilities.TEST_LOCATION,
+                                WeatherContract.ClimateEntry.PERIOD_ALL, firstDate, lastDate), 90),
+                null, null, null, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Days inserted twice should only be counted once",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getInt(
+                        cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_DAY_COUNT)));
+        assertEquals(75.0, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_HIGH_MIN)), 1e-9);
+        assertEquals(84.0, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_HIGH_MAX)), 1e-9);
+        assertEquals(79.5, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_HIGH_MEAN)), 1e-9);
+        assertEquals(60.5, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_LOW_MEAN)), 1e-9);
+        assertEquals(83.0, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_HIGH_PERCENTILE)), 1e-9);
+        // With a single year, normal is what happened
+        assertEquals(0, cursor.getDouble(
+                cursor.getColumnIndex(WeatherContract.ClimateEntry.COLUMN_HIGH_ANOMALY)), 1e-9);
+        cursor.close();
+
+        // The warmest week comes first, and the weeks hold every day between them
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.ClimateEntry.buildClimateUri(TestUtilities.TEST_LOCATION,
+                        WeatherContract.ClimateEntry.PERIOD_WEEK, firstDate, lastDate),
+                new String[]{WeatherContract.ClimateEntry.COLUMN_DAY_COUNT,
+                        WeatherContract.ClimateEntry.COLUMN_HIGH_MEAN,
+                        WeatherContract.ClimateEntry.COLUMN_LAST_DATE},
+                null, null, WeatherContract.ClimateEntry.COLUMN_HIGH_MEAN + " DESC");
+        assertTrue(cursor.moveToFirst());
+        assertEquals(WeatherContract.normalizeDate(lastDate), cursor.getLong(2));
+        int dayCount = 0;
+        double previousMean = Double.MAX_VALUE;
+        do {
+            dayCount += cursor.getInt(0);
+            assertTrue(cursor.getDouble(1) <= previousMean);
+            previousMean = cursor.getDouble(1);
+        } while (cursor.moveToNext());
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, dayCount);
+        cursor.close();
+
+        // A range of over a year holds every calendar day, even though its ends fall on days
+        // of the year after the ones inserted
+        long millisecondsInADay = 1000*60*60*24;
+        long rangeStart = lastDate + millisecondsInADay;
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.ClimateEntry.buildClimateUri(TestUtilities.TEST_LOCATION,
+                        WeatherContract.ClimateEntry.PERIOD_CALENDAR_DAY, rangeStart,
+                        rangeStart + 367 * millisecondsInADay),
+                null, null, null, null);
+        assertEquals("Error: A range of over a year should include every calendar day",
+                BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Locations within the radius should come back nearest first with their distance, and
+        the ones outside it not at all.
+     */
+    public void testLocationsNear() {
+        ContentValues nearValues = createLocationValues("near", 64.7488, -147.353);
+        ContentValues nearerValues = createLocationValues("nearer", 64.7480, -147.353);
+        ContentValues farValues = createLocationValues("far", 64.8488, -147.353);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, nearValues);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, nearerValues);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, farValues);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                LocationEntry.buildLocationsNearUri(64.7478, -147.353, 1000),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Only the locations within the radius should be found",
+                2, cursor.getCount());
+
+        cursor.moveToFirst();
+        TestUtilities.validateCurrentRecord("testLocationsNear. Error validating nearest location",
+                cursor, nearerValues);
+        double nearestDistance = cursor.getDouble(
+                cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE));
+        cursor.moveToNext();
+        TestUtilities.validateCurrentRecord("testLocationsNear. Error validating next location",
+                cursor, nearValues);
+        double nextDistance = cursor.getDouble(
+                cursor.getColumnIndex(LocationEntry.COLUMN_DISTANCE));
+        assertTrue("Error: Locations should be sorted by distance",
+                nearestDistance < nextDistance);
+        assertTrue("Error: Distance should be in meters", nextDistance > 100 && nextDistance < 200);
+        cursor.close();
+    }
+
+    public void testBuildPrefixMatch() {
+        assertEquals("lon*", WeatherProvider.buildPrefixMatch("lon"));
+        assertEquals("new* york*", WeatherProvider.buildPrefixMatch(" new  york"));
+        assertEquals("Error: Query syntax should be treated as separators",
+                "london* gb*", WeatherProvider.buildPrefixMatch("london,\"gb\" -"));
+        assertEquals("", WeatherProvider.buildPrefixMatch(" , "));
+    }
+
+    /*
+        Suggestions should come from the bundled cities, with the stored locations that match
+        ahead of them, and a stored location should stop being suggested once it's deleted.
+     */
+    public void testCitySearch() {
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.CitySearchEntry.buildSearchUri("Lond"),
+                null,
+                null,
+                null,
+                null
+        );
+        assertTrue("Error: A bundled city should be suggested", cursor.moveToFirst());
+        assertEquals("London,GB", cursor.getString(
+                cursor.getColumnIndex(WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        ContentValues locationValues = createLocationValues("Londonderry, UK", 54.9966, -7.3086);
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, "Londonderry");
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, locationValues);
+
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.CitySearchEntry.buildSearchUri("Lond"),
+                null,
+                null,
+                null,
+                null
+        );
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Stored locations should be suggested first",
+                "Londonderry, UK", cursor.getString(
+                cursor.getColumnIndex(WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING)));
+        cursor.close();
+
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        cursor = mContext.getContentResolver().query(
+                WeatherContract.CitySearchEntry.buildSearchUri("Londonderry"),
+                null,
+                null,
+                null,
+                null
+        );
+        assertEquals("Error: Deleted locations should not be suggested", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    private static ContentValues createLocationValues(String locationSetting, double lat,
+                                                      double lon) {
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        return values;
+    }
+
     // Student: Uncomment this test after you have completed writing the BulkInsert functionality
     // in your provider.  Note that this test will work with the built-in (default) provider
     // implementation, which just inserts records one-at-a-time, so really do implement the
@@ -512,4 +801,109 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    /*
+        The compact weather layout should make no difference through the provider: inserts,
+        bulk inserts, batched updates and the queries joined with the location should all give
+        back the values that went in, to a tenth.
+     */
+    public void testCompactStorage() throws Exception {
+        final String name = "compact_provider_test.db";
+        mContext.deleteDatabase(name);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext, name, true);
+        WeatherProvider provider = new WeatherProvider(dbHelper);
+        provider.attachInfo(mContext, null);
+        try {
+            assertTrue("Error: A new database should get the compact layout",
+                    dbHelper.isCompactStorage());
+
+            ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+            long locationRowId = ContentUris.parseId(
+                    provider.insert(LocationEntry.CONTENT_URI, locationValues));
+            assertTrue(locationRowId != -1);
+
+            ContentValues weatherValues = TestUtilities.createWeatherValues(locationRowId);
+            weatherValues.put(WeatherEntry.COLUMN_MAX_TEMP, 75.26);
+            provider.insert(WeatherEntry.CONTENT_URI, weatherValues);
+
+            Cursor cursor = provider.query(WeatherEntry.CONTENT_URI, null, null, null, null);
+            assertTrue("Error: No Records returned from weather query", cursor.moveToFirst());
+            TestUtilities.validateCurrentRecordToTenth(
+                    "testCompactStorage. Error validating WeatherEntry insert.",
+                    cursor, weatherValues);
+            cursor.close();
+
+            ContentValues joinedValues = new ContentValues(weatherValues);
+            joinedValues.putAll(locationValues);
+            cursor = provider.query(WeatherEntry.buildWeatherLocationWithStartDate(
+                            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                    null, null, null, null);
+            assertTrue("Error: No Records returned from joined query", cursor.moveToFirst());
+            TestUtilities.validateCurrentRecordToTenth(
+                    "testCompactStorage. Error validating joined Weather and Location Data.",
+                    cursor, joinedValues);
+            cursor.close();
+
+            // Replaces the day inserted above along with the nine after it
+            ContentValues[] bulkInsertContentValues = createBulkInsertWeatherValues(locationRowId);
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT,
+                    provider.bulkInsert(WeatherEntry.CONTENT_URI, bulkInsertContentValues));
+
+            // Batched updates go through the same encoding as inserts
+            long firstDate = bulkInsertContentValues[0].getAsLong(WeatherEntry.COLUMN_DATE);
+            ContentValues updatedValues = new ContentValues();
+            updatedValues.put(WeatherEntry.COLUMN_MAX_TEMP, 90.04);
+            updatedValues.put(WeatherEntry.COLUMN_SHORT_DESC, "Meteors");
+            updatedValues.put(WeatherEntry.COLUMN_WEATHER_ID, 322);
+            ArrayList<ContentProviderOperation> operations = new ArrayList<>();
+            operations.add(ContentProviderOperation.newUpdate(WeatherEntry.CONTENT_URI)
+                    .withValues(updatedValues)
+                    .withSelection(WeatherEntry.COLUMN_DATE + " = ?",
+                            new String[]{Long.toString(firstDate)})
+                    .build());
+            assertEquals(1, provider.applyBatch(operations)[0].count.intValue());
+            bulkInsertContentValues[0].putAll(updatedValues);
+
+            cursor = provider.query(WeatherEntry.buildWeatherLocationWithStartDate(
+                            TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE),
+                    null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+            assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+            cursor.moveToFirst();
+            for (int i = 0; i < BULK_INSERT_RECORDS_TO_INSERT; i++, cursor.moveToNext()) {
+                TestUtilities.validateCurrentRecordToTenth(
+                        "testCompactStorage. Error validating WeatherEntry " + i,
+                        cursor, bulkInsertContentValues[i]);
+            }
+            cursor.close();
+
+            cursor = provider.query(WeatherEntry.buildWeatherLocationWithDate(
+                            TestUtilities.TEST_LOCATION, firstDate),
+                    new String[]{WeatherEntry.COLUMN_SHORT_DESC, WeatherEntry.COLUMN_MAX_TEMP},
+                    null, null, null);
+            assertTrue(cursor.moveToFirst());
+            assertEquals("Meteors", cursor.getString(0));
+            assertEquals(90.0, cursor.getDouble(1), 1e-9);
+            cursor.close();
+
+            // Sorting on a scaled column is unaffected by the scaling, while a selection on one
+            // compares the stored tenths
+            cursor = provider.query(WeatherEntry.CONTENT_URI,
+                    new String[]{WeatherEntry.COLUMN_MAX_TEMP},
+                    WeatherEntry.COLUMN_MAX_TEMP + " > ?",
+                    new String[]{Integer.toString(80 * CompactWeatherStorage.SCALE)},
+                    WeatherEntry.COLUMN_MAX_TEMP + " DESC");
+            // The updated day at 90 and the highs of 81 to 84
+            assertEquals(5, cursor.getCount());
+            double previousMax = Double.MAX_VALUE;
+            while (cursor.moveToNext()) {
+                assertTrue(cursor.getDouble(0) > 80);
+                assertTrue(cursor.getDouble(0) <= previousMax);
+                previousMax = cursor.getDouble(0);
+            }
+            cursor.close();
+        } finally {
+            dbHelper.close();
+            mContext.deleteDatabase(name);
+        }
+    }
 }
@@ -36,6 +36,12 @@ public class TestUriMatcher extends AndroidTestCase {
     private static final Uri TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(LOCATION_QUERY, TEST_DATE);
     // content://com.example.android.sunshine.app/location"
     private static final Uri TEST_LOCATION_DIR = WeatherContract.LocationEntry.CONTENT_URI;
+    private static final Uri TEST_CITY_SEARCH_DIR = WeatherContract.CitySearchEntry.buildSearchUri("Lon");
+    private static final Uri TEST_LOCATION_NEAR_DIR = WeatherContract.LocationEntry.buildLocationsNearUri(64.7488, -147.353, 1000);
+    private static final Uri TEST_HISTORY_DIR = WeatherContract.HistoryEntry.buildArchiveUri(TEST_DATE);
+    private static final Uri TEST_HISTORY_WITH_LOCATION_DIR = WeatherContract.HistoryEntry.buildHistoryLocationWithRange(LOCATION_QUERY, TEST_DATE, TEST_DATE);
+    private static final Uri TEST_CLIMATE_DIR = WeatherContract.ClimateEntry.CONTENT_URI;
+    private static final Uri TEST_CLIMATE_WITH_LOCATION_AND_PERIOD_DIR = WeatherContract.ClimateEntry.buildClimateUri(LOCATION_QUERY, WeatherContract.ClimateEntry.PERIOD_WEEK, TEST_DATE, TEST_DATE);
 
     /*
         Students: This function tests that your UriMatcher returns the correct integer value
@@ -53,5 +59,17 @@ public class TestUriMatcher extends AndroidTestCase {
                 testMatcher.match(TEST_WEATHER_WITH_LOCATION_AND_DATE_DIR), WeatherProvider.WEATHER_WITH_LOCATION_AND_DATE);
         assertEquals("Error: The LOCATION URI was matched incorrectly.",
                 testMatcher.match(TEST_LOCATION_DIR), WeatherProvider.LOCATION);
+        assertEquals("Error: The LOCATION NEAR URI was matched incorrectly.",
+                testMatcher.match(TEST_LOCATION_NEAR_DIR), WeatherProvider.LOCATION_NEAR);
+        assertEquals("Error: The CITY SEARCH URI was matched incorrectly.",
+                testMatcher.match(TEST_CITY_SEARCH_DIR), WeatherProvider.CITY_SEARCH);
+        assertEquals("Error: The HISTORY URI was matched incorrectly.",
+                testMatcher.match(TEST_HISTORY_DIR), WeatherProvider.HISTORY);
+        assertEquals("Error: The HISTORY WITH LOCATION URI was matched incorrectly.",
+                testMatcher.match(TEST_HISTORY_WITH_LOCATION_DIR), WeatherProvider.HISTORY_WITH_LOCATION);
+        assertEquals("Error: The CLIMATE URI was matched incorrectly.",
+                testMatcher.match(TEST_CLIMATE_DIR), WeatherProvider.CLIMATE);
+        assertEquals("Error: The CLIMATE WITH LOCATION AND PERIOD URI was matched incorrectly.",
+                testMatcher.match(TEST_CLIMATE_WITH_LOCATION_AND_PERIOD_DIR), WeatherProvider.CLIMATE_WITH_LOCATION_AND_PERIOD);
     }
 }
@@ -58,6 +58,27 @@ public class TestUtilities extends AndroidTestCase {
         }
     }
 
+    /*
+        Like validateCurrentRecord, for the compact weather layout, which gives back the scaled
+        measurements to a tenth.
+     */
+    static void validateCurrentRecordToTenth(String error, Cursor valueCursor,
+                                             ContentValues expectedValues) {
+        ContentValues unscaled = new ContentValues(expectedValues);
+        for (String column : CompactWeatherStorage.SCALED_COLUMNS) {
+            if (!unscaled.containsKey(column)) {
+                continue;
+            }
+            int idx = valueCursor.getColumnIndex(column);
+            assertFalse("Column '" + column + "' not found. " + error, idx == -1);
+            assertEquals("Value of '" + column + "' did not match to a tenth. " + error,
+                    unscaled.getAsDouble(column), valueCursor.getDouble(idx),
+                    0.5 / CompactWeatherStorage.SCALE + 1e-9);
+            unscaled.remove(column);
+        }
+        validateCurrentRecord(error, valueCursor, unscaled);
+    }
+
     /*
         Students: Use this to create some default weather values for your database tests.
      */
@@ -42,4 +42,19 @@ public class TestWeatherContract extends AndroidTestCase {
                 locationUri.toString(),
                 "content://com.example.android.sunshine.app/weather/%2FNorth%20Pole");
     }
+
+    public void testBuildRevalidatingUri() {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                TEST_WEATHER_LOCATION, TEST_WEATHER_DATE);
+        assertFalse(WeatherContract.isRevalidating(weatherUri));
+
+        Uri revalidatingUri = WeatherContract.buildRevalidatingUri(weatherUri);
+        assertTrue(WeatherContract.isRevalidating(revalidatingUri));
+        assertEquals("Error: Revalidating should not change the location",
+                TEST_WEATHER_LOCATION,
+                WeatherContract.WeatherEntry.getLocationSettingFromUri(revalidatingUri));
+        assertEquals("Error: Revalidating should not change the start date",
+                WeatherContract.WeatherEntry.getStartDateFromUri(weatherUri),
+                WeatherContract.WeatherEntry.getStartDateFromUri(revalidatingUri));
+    }
 }
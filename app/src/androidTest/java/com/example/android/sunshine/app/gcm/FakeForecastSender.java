@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.Context;
+import android.os.Bundle;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Stands in for the server pushing forecast deltas: builds the message the way the server does
+ * and delivers it to the same code {@link MyGcmListenerService} runs for a real push.
+ */
+class FakeForecastSender {
+    private final Context mContext;
+    private final JSONObject mMessage = new JSONObject();
+    private final JSONArray mDays = new JSONArray();
+
+    FakeForecastSender(Context context, String locationSetting) throws JSONException {
+        mContext = context;
+        mMessage.put(ForecastDelta.JSON_LOCATION, locationSetting);
+        mMessage.put(ForecastDelta.JSON_DAYS, mDays);
+    }
+
+    /**
+     * Adds a day to the message.
+     *
+     * @param fields the short field names and their values, e.g. {@code "max", 21.5}
+     */
+    FakeForecastSender addDay(long date, Object... fields) throws JSONException {
+        JSONObject day = new JSONObject();
+        day.put(ForecastDelta.JSON_DATE, date);
+        for (int i = 0; i < fields.length; i += 2) {
+            day.put((String) fields[i], fields[i + 1]);
+        }
+        mDays.put(day);
+        return this;
+    }
+
+    Bundle buildMessage() {
+        Bundle data = new Bundle();
+        data.putString(MyGcmListenerService.EXTRA_FORECAST, mMessage.toString());
+        return data;
+    }
+
+    /**
+     * @return whether the message was applied
+     */
+    boolean send() {
+        return MyGcmListenerService.handleForecast(mContext, buildMessage());
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+public class TestForecastDelta extends AndroidTestCase {
+    // Not the preferred location, so that applying a delta doesn't start the fan-out
+    private static final String TEST_LOCATION = "99705";
+    private static final long TEST_DATE = 1419033600000L;  // December 20th, 2014
+    private static final long DAY_IN_MILLIS = 24 * 60 * 60 * 1000;
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        ContentValues location = new ContentValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, TEST_LOCATION);
+        location.put(LocationEntry.COLUMN_CITY_NAME, "North Pole");
+        location.put(LocationEntry.COLUMN_COORD_LAT, 64.7488);
+        location.put(LocationEntry.COLUMN_COORD_LONG, -147.353);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, location);
+        mLocationId = ContentUris.parseId(locationUri);
+
+        ContentValues weather = new ContentValues();
+        weather.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+        weather.put(WeatherEntry.COLUMN_DATE, TEST_DATE);
+        weather.put(WeatherEntry.COLUMN_DEGREES, 1.1);
+        weather.put(WeatherEntry.COLUMN_HUMIDITY, 1.2);
+        weather.put(WeatherEntry.COLUMN_PRESSURE, 1.3);
+        weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75);
+        weather.put(WeatherEntry.COLUMN_MIN_TEMP, 65);
+        weather.put(WeatherEntry.COLUMN_SHORT_DESC, "Asteroids");
+        weather.put(WeatherEntry.COLUMN_WIND_SPEED, 5.5);
+        weather.put(WeatherEntry.COLUMN_WEATHER_ID, 321);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, weather);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    public void testDeltaUpdatesOnlyChangedFields() throws Exception {
+        assertTrue(new FakeForecastSender(mContext, TEST_LOCATION)
+                .addDay(TEST_DATE, "max", 80.5, "id", 500)
+                .send());
+
+        Cursor cursor = queryDay(TEST_DATE);
+        assertTrue("Error: Pushed day is missing", cursor.moveToFirst());
+        assertEquals(80.5, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+        assertEquals(500, cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID)));
+        assertEquals(65.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP)));
+        assertEquals("Asteroids",
+                cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+        cursor.close();
+    }
+
+    public void testCompleteDayIsInserted() throws Exception {
+        long nextDay = TEST_DATE + DAY_IN_MILLIS;
+        assertTrue(new FakeForecastSender(mContext, TEST_LOCATION)
+                .addDay(nextDay, "id", 800, "desc", "Clear", "max", 70, "min", 60,
+                        "hum", 40, "pres", 1010, "wind", 2.5, "deg", 90)
+                .send());
+
+        Cursor cursor = queryDay(nextDay);
+        assertTrue("Error: Pushed day was not inserted", cursor.moveToFirst());
+        assertEquals("Clear", cursor.getString(cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC)));
+        cursor.close();
+    }
+
+    public void testDeltaIsAppliedAllOrNothing() throws Exception {
+        // The second day was never stored, so the update of the first mustn't land either
+        assertFalse(new FakeForecastSender(mContext, TEST_LOCATION)
+                .addDay(TEST_DATE, "max", 90)
+                .addDay(TEST_DATE + DAY_IN_MILLIS, "max", 91)
+                .send());
+
+        Cursor cursor = queryDay(TEST_DATE);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+        cursor.close();
+    }
+
+    public void testUnknownLocationAndMalformedDeltasAreIgnored() throws Exception {
+        assertFalse(new FakeForecastSender(mContext, "00000")
+                .addDay(TEST_DATE, "max", 90)
+                .send());
+        assertFalse(new FakeForecastSender(mContext, TEST_LOCATION)
+                .addDay(TEST_DATE, "bogus", 1)
+                .send());
+
+        Cursor cursor = queryDay(TEST_DATE);
+        assertTrue(cursor.moveToFirst());
+        assertEquals(75.0, cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP)));
+        cursor.close();
+    }
+
+    private Cursor queryDay(long date) {
+        return mContext.getContentResolver().query(
+                WeatherEntry.buildWeatherLocationWithDate(TEST_LOCATION, date),
+                null, null, null, null);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.test.AndroidTestCase;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.TimeUnit;
+
+public class TestJankStats extends AndroidTestCase {
+    private static final long REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+
+    public void testJankAttribution() throws Exception {
+        JankStats.Screen screen = JankStats.getInstance().getScreen("test");
+        screen.reset();
+
+        // Smooth frames
+        for (int i = 0; i < 8; i++) {
+            screen.recordFrame(REFRESH_NANOS, REFRESH_NANOS);
+        }
+        // A frame that missed two vsyncs while binding a slow row
+        screen.recordBind(REFRESH_NANOS);
+        screen.recordFrame(3 * REFRESH_NANOS, REFRESH_NANOS);
+        // A frame that missed one vsync with the scroll listeners to blame
+        screen.recordScrollListener(REFRESH_NANOS);
+        screen.recordFrame(2 * REFRESH_NANOS, REFRESH_NANOS);
+        // Binding that happened while nothing was tracked isn't blamed on the next frame
+        screen.recordBind(REFRESH_NANOS);
+        screen.beginTracking();
+        screen.recordFrame(2 * REFRESH_NANOS, REFRESH_NANOS);
+
+        JSONObject json = screen.toJson();
+        assertEquals(11, json.getLong("frames"));
+        assertEquals(3, json.getLong("jank_frames"));
+        assertEquals(4, json.getLong("dropped_frames"));
+        assertEquals(1, json.getLong("jank_frames_slow_bind"));
+        assertEquals(1, json.getLong("jank_frames_slow_scroll_listener"));
+        assertEquals(2, json.getJSONObject("bind_us").getLong("count"));
+    }
+}
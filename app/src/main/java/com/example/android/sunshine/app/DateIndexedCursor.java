@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.net.Uri;
+import android.support.v4.content.CursorLoader;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A cursor of weather rows with an index from date to row position, so that a row can be found
+ * by its date with a binary search instead of walking the cursor.  The index is built by
+ * {@link Loader} on the loader's background thread, together with filling the cursor window.
+ */
+public class DateIndexedCursor extends CursorWrapper {
+    // The dates in ascending order, and the row each is at
+    private final long[] mDates;
+    private final int[] mPositions;
+
+    DateIndexedCursor(Cursor cursor, int dateColumn) {
+        super(cursor);
+        int count = cursor.getCount();
+        final long[] dates = new long[count];
+        boolean sorted = true;
+        for (int i = 0; i < count; i++) {
+            cursor.moveToPosition(i);
+            dates[i] = cursor.getLong(dateColumn);
+            if (i > 0 && dates[i] < dates[i - 1]) {
+                sorted = false;
+            }
+        }
+        cursor.moveToPosition(-1);
+
+        if (sorted) {
+            mDates = dates;
+            mPositions = null;
+        } else {
+            // Not sorted by date, index it through the positions sorted by their dates
+            Integer[] order = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    long l = dates[lhs];
+                    long r = dates[rhs];
+                    return l < r ? -1 : (l == r ? 0 : 1);
+                }
+            });
+            mDates = new long[count];
+            mPositions = new int[count];
+            for (int i = 0; i < count; i++) {
+                mPositions[i] = order[i];
+                mDates[i] = dates[order[i]];
+            }
+        }
+    }
+
+    /**
+     * @return the position of a row with the date, or -1 if there is none
+     */
+    public int getPositionForDate(long date) {
+        int index = Arrays.binarySearch(mDates, date);
+        if (index < 0) {
+            return -1;
+        }
+        return mPositions == null ? index : mPositions[index];
+    }
+
+    /**
+     * A {@link CursorLoader} that indexes the weather rows it loads by their date.
+     */
+    public static class Loader extends CursorLoader {
+        private final int mDateColumn;
+
+        /**
+         * @param dateColumn the index of the date column in the projection
+         */
+        public Loader(Context context, Uri uri, String[] projection, String selection,
+                String[] selectionArgs, String sortOrder, int dateColumn) {
+            super(context, uri, projection, selection, selectionArgs, sortOrder);
+            mDateColumn = dateColumn;
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            Cursor cursor = super.loadInBackground();
+            return cursor == null ? null : new DateIndexedCursor(cursor, mDateColumn);
+        }
+    }
+}
@@ -15,40 +15,254 @@
  */
 package com.example.android.sunshine.app;
 
+import android.annotation.TargetApi;
 import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.support.v4.app.Fragment;
+import android.support.v4.app.FragmentManager;
+import android.support.v4.app.FragmentStatePagerAdapter;
+import android.support.v4.app.LoaderManager;
+import android.support.v4.content.Loader;
+import android.support.v4.view.PagerAdapter;
+import android.support.v4.view.ViewPager;
 import android.support.v7.app.ActionBarActivity;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
+import android.transition.Transition;
 import android.view.Menu;
 import android.view.MenuItem;
 
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.FrameTracker;
+import com.example.android.sunshine.app.perf.JankStats;
 
-public class DetailActivity extends AppCompatActivity {
+
+/**
+ * Shows one day's forecast, and lets the user swipe to the days around it.  All the days are
+ * loaded together off the main thread, and the pages next to the one shown are kept bound, so
+ * moving between days doesn't wait for a query or an image.
+ */
+public class DetailActivity extends AppCompatActivity
+        implements LoaderManager.LoaderCallbacks<Cursor> {
+    private static final String SELECTED_DATE_KEY = "selected_date";
+
+    private static final int DAYS_LOADER = 0;
+
+    // How many days either side of the one shown are kept bound, with their art loaded
+    private static final int PRELOADED_DAYS = 2;
+
+    // Stop tracking the transition's frames after this long even if we don't hear it ended
+    private static final long TRANSITION_TRACKING_MS = 2000;
+
+    private ViewPager mPager;
+    private DayPagerAdapter mPagerAdapter;
+    private DateIndexedCursor mDays;
+    private String mLocation;
+    private long mSelectedDate;
+    // Whether the page for mSelectedDate should still run the transition from the list
+    private boolean mTransitionPending;
+
+    private FrameTracker mFrameTracker;
+    private final Handler mHandler = new Handler();
+    private final Runnable mStopTracking = new Runnable() {
+        @Override
+        public void run() {
+            mFrameTracker.stop();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_detail);
 
+        Uri uri = getIntent().getData();
+        mLocation = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         if (savedInstanceState == null) {
-            // Create the detail fragment and add it to the activity
-            // using a fragment transaction.
+            mSelectedDate = WeatherContract.WeatherEntry.getDateFromUri(uri);
+        } else {
+            mSelectedDate = savedInstanceState.getLong(SELECTED_DATE_KEY);
+        }
+
+        mPagerAdapter = new DayPagerAdapter(getSupportFragmentManager());
+        mPager = (ViewPager) findViewById(R.id.detail_pager);
+        mPager.setOffscreenPageLimit(PRELOADED_DAYS);
+        mPager.setAdapter(mPagerAdapter);
+        mPager.addOnPageChangeListener(new ViewPager.SimpleOnPageChangeListener() {
+            @Override
+            public void onPageSelected(int position) {
+                if (mDays != null && mDays.moveToPosition(position)) {
+                    mSelectedDate = mDays.getLong(DetailFragment.COL_WEATHER_DATE);
+                }
+            }
+        });
+
+        if (savedInstanceState == null) {
+            // Being here means we are in animation mode
+            mTransitionPending = true;
+            supportPostponeEnterTransition();
+            trackTransition();
+        }
+        getSupportLoaderManager().initLoader(DAYS_LOADER, null, this);
+    }
+
+    @Override
+    protected void onSaveInstanceState(Bundle outState) {
+        outState.putLong(SELECTED_DATE_KEY, mSelectedDate);
+        super.onSaveInstanceState(outState);
+    }
+
+    /**
+     * @return all the days the pages show, with DetailFragment's columns, or null if they
+     * haven't loaded yet
+     */
+    Cursor getDays() {
+        return mDays;
+    }
+
+    @Override
+    public Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        // From today like the list, but including the day we were opened for if it has passed
+        long startDate = Math.min(mSelectedDate, System.currentTimeMillis());
+        Uri daysUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                mLocation, startDate);
+        return new DateIndexedCursor.Loader(this,
+                daysUri,
+                DetailFragment.DETAIL_COLUMNS,
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC",
+                DetailFragment.COL_WEATHER_DATE);
+    }
+
+    @Override
+    public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
+        mDays = (DateIndexedCursor) data;
+        int position = mDays == null ? DetailFragment.NO_POSITION
+                : mDays.getPositionForDate(mSelectedDate);
+        if (position == DetailFragment.NO_POSITION && mTransitionPending) {
+            // There's no page to run the transition into, so don't keep the window waiting
+            mTransitionPending = false;
+            supportStartPostponedEnterTransition();
+        }
+        mPagerAdapter.notifyDataSetChanged();
+        if (position != DetailFragment.NO_POSITION) {
+            mPager.setCurrentItem(position, false);
+        }
+    }
+
+    @Override
+    public void onLoaderReset(Loader<Cursor> loader) {
+        mDays = null;
+        mPagerAdapter.notifyDataSetChanged();
+    }
+
+    /**
+     * Creates a page for each day in the cursor.  The pages bind straight from the cursor rather
+     * than loading their own day.
+     */
+    private class DayPagerAdapter extends FragmentStatePagerAdapter {
+        DayPagerAdapter(FragmentManager fm) {
+            super(fm);
+        }
+
+        @Override
+        public Fragment getItem(int position) {
+            mDays.moveToPosition(position);
+            long date = mDays.getLong(DetailFragment.COL_WEATHER_DATE);
+            boolean transition = mTransitionPending && date == mSelectedDate;
+            if (transition) {
+                mTransitionPending = false;
+            }
 
             Bundle arguments = new Bundle();
-            arguments.putParcelable(DetailFragment.DETAIL_URI, getIntent().getData());
-            arguments.putBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, true);
+            arguments.putParcelable(DetailFragment.DETAIL_URI,
+                    WeatherContract.WeatherEntry.buildWeatherLocationWithDate(mLocation, date));
+            arguments.putInt(DetailFragment.DETAIL_POSITION, position);
+            arguments.putBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, transition);
 
             DetailFragment fragment = new DetailFragment();
             fragment.setArguments(arguments);
+            return fragment;
+        }
 
-            getSupportFragmentManager().beginTransaction()
-                    .add(R.id.weather_detail_container, fragment)
-                    .commit();
+        @Override
+        public int getItemPosition(Object object) {
+            // FragmentStatePagerAdapter keeps its pages by index, so a page can only be kept if
+            // its day is still at the same row.  It is rebound from the new row, and any page
+            // whose day has moved or gone is replaced.
+            DetailFragment fragment = (DetailFragment) object;
+            int position = mDays == null ? DetailFragment.NO_POSITION
+                    : mDays.getPositionForDate(fragment.getDate());
+            if (position == DetailFragment.NO_POSITION || position != fragment.getPosition()) {
+                return PagerAdapter.POSITION_NONE;
+            }
+            fragment.onDaysChanged();
+            return PagerAdapter.POSITION_UNCHANGED;
+        }
 
-            // Being here means we are in animation mode
-            supportPostponeEnterTransition();
+        @Override
+        public int getCount() {
+            return mDays == null ? 0 : mDays.getCount();
+        }
+    }
+
+    /**
+     * Records the frames from the postponed start of the shared element transition until it
+     * ends.
+     */
+    private void trackTransition() {
+        mFrameTracker = FrameTracker.create(this, JankStats.SCREEN_DETAIL_TRANSITION);
+        mFrameTracker.start();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            addTransitionEndListener();
+        }
+        mHandler.postDelayed(mStopTracking, TRANSITION_TRACKING_MS);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void addTransitionEndListener() {
+        Transition transition = getWindow().getSharedElementEnterTransition();
+        if (transition == null) {
+            return;
+        }
+        transition.addListener(new Transition.TransitionListener() {
+            @Override
+            public void onTransitionStart(Transition transition) {
+            }
+
+            @Override
+            public void onTransitionEnd(Transition transition) {
+                transition.removeListener(this);
+                mHandler.removeCallbacks(mStopTracking);
+                mFrameTracker.stop();
+            }
+
+            @Override
+            public void onTransitionCancel(Transition transition) {
+                onTransitionEnd(transition);
+            }
+
+            @Override
+            public void onTransitionPause(Transition transition) {
+            }
+
+            @Override
+            public void onTransitionResume(Transition transition) {
+            }
+        });
+    }
+
+    @Override
+    protected void onDestroy() {
+        mHandler.removeCallbacks(mStopTracking);
+        if (mFrameTracker != null) {
+            mFrameTracker.stop();
         }
+        super.onDestroy();
     }
 }
\ No newline at end of file
@@ -23,6 +23,7 @@ import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.view.ViewCompat;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.CardView;
 import android.support.v7.widget.ShareActionProvider;
@@ -38,6 +39,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -49,16 +51,21 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     private static final String LOG_TAG = DetailFragment.class.getSimpleName();
     static final String DETAIL_URI = "URI";
     static final String DETAIL_TRANSITION_ANIMATION = "DTA";
+    static final String DETAIL_POSITION = "POS";
+
+    static final int NO_POSITION = -1;
 
     private static final String FORECAST_SHARE_HASHTAG = " #SunshineApp";
 
     private String mForecast;
     private Uri mUri;
     private boolean mTransitionAnimation;
+    // The row in DetailActivity's cursor this page shows, when paged instead of loading its own
+    private int mPosition = NO_POSITION;
 
     private static final int DETAIL_LOADER = 0;
 
-    private static final String[] DETAIL_COLUMNS = {
+    static final String[] DETAIL_COLUMNS = {
             WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
             WeatherEntry.COLUMN_DATE,
             WeatherEntry.COLUMN_SHORT_DESC,
@@ -111,6 +118,7 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         if (arguments != null) {
             mUri = arguments.getParcelable(DetailFragment.DETAIL_URI);
             mTransitionAnimation = arguments.getBoolean(DetailFragment.DETAIL_TRANSITION_ANIMATION, false);
+            mPosition = arguments.getInt(DetailFragment.DETAIL_POSITION, NO_POSITION);
         }
 
         View rootView = inflater.inflate(R.layout.fragment_detail_start, container, false);
@@ -125,6 +133,12 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         mWindLabelView = (TextView) rootView.findViewById(R.id.detail_wind_label_textview);
         mPressureView = (TextView) rootView.findViewById(R.id.detail_pressure_textview);
         mPressureLabelView = (TextView) rootView.findViewById(R.id.detail_pressure_label_textview);
+
+        // Only the page the list transitions into may share the icon's name, or the transition
+        // could pick a neighbouring day's icon
+        if (mPosition != NO_POSITION && !mTransitionAnimation) {
+            ViewCompat.setTransitionName(mIconView, null);
+        }
         return rootView;
     }
 
@@ -153,10 +167,61 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
 
     @Override
     public void onActivityCreated(Bundle savedInstanceState) {
-        getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        if (mPosition == NO_POSITION) {
+            getLoaderManager().initLoader(DETAIL_LOADER, null, this);
+        } else {
+            // Paged, so the row is already in memory and there is nothing to load
+            Cursor days = ((DetailActivity) getActivity()).getDays();
+            if (days != null && days.moveToPosition(mPosition)) {
+                bindDay(days);
+            }
+            finishBinding();
+        }
         super.onActivityCreated(savedInstanceState);
     }
 
+    /**
+     * @return the day this fragment shows
+     */
+    long getDate() {
+        Uri uri = getArguments().getParcelable(DetailFragment.DETAIL_URI);
+        return WeatherContract.WeatherEntry.getDateFromUri(uri);
+    }
+
+    /**
+     * @return the row of the pager's cursor this fragment shows
+     */
+    int getPosition() {
+        return getArguments().getInt(DetailFragment.DETAIL_POSITION, NO_POSITION);
+    }
+
+    /**
+     * Shows the day again from the pager's new cursor, which has it at the same row.
+     */
+    void onDaysChanged() {
+        if (getView() == null) {
+            // The row will be bound when the view is created
+            return;
+        }
+        Cursor days = ((DetailActivity) getActivity()).getDays();
+        if (days != null && days.moveToPosition(mPosition)) {
+            bindDay(days);
+            if (getUserVisibleHint()) {
+                // The share intent holds the forecast
+                ((DetailActivity) getActivity()).supportInvalidateOptionsMenu();
+            }
+        }
+    }
+
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        // The pager makes the page being shown visible, and that page owns the action bar
+        if (isVisibleToUser && mPosition != NO_POSITION && getView() != null) {
+            setToolbarAsActionBar();
+        }
+    }
+
     void onLocationChanged( String newLocation ) {
         // replace the uri, since the location has changed
         Uri uri = mUri;
@@ -192,90 +257,99 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
         if (data != null && data.moveToFirst()) {
-            ViewParent vp = getView().getParent();
-            if ( vp instanceof CardView ) {
-                ((View)vp).setVisibility(View.VISIBLE);
-            }
+            bindDay(data);
+        }
+        finishBinding();
+    }
 
-            // Read weather condition ID from cursor
-            int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
-
-            if ( Utility.usingLocalGraphics(getActivity()) ) {
-                mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
-            } else {
-                // Use weather art image
-                Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
-                        .error(Utility.getArtResourceForWeatherCondition(weatherId))
-                        .crossFade()
-                        .into(mIconView);
-            }
+    /**
+     * Shows the day at the cursor's current row.
+     */
+    private void bindDay(Cursor data) {
+        ViewParent vp = getView().getParent();
+        if ( vp instanceof CardView ) {
+            ((View)vp).setVisibility(View.VISIBLE);
+        }
 
-            // Read date from cursor and update views for day of week and date
-            long date = data.getLong(COL_WEATHER_DATE);
-            String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
-            mDateView.setText(dateText);
-
-            // Get description from weather condition ID
-            String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
-            mDescriptionView.setText(description);
-            mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
-
-            // For accessibility, add a content description to the icon field. Because the ImageView
-            // is independently focusable, it's better to have a description of the image. Using
-            // null is appropriate when the image is purely decorative or when the image already
-            // has text describing it in the same UI component.
-            mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
-
-            // Read high temperature from cursor and update view
-            boolean isMetric = Utility.isMetric(getActivity());
-
-            double high = data.getDouble(COL_WEATHER_MAX_TEMP);
-            String highString = Utility.formatTemperature(getActivity(), high);
-            mHighTempView.setText(highString);
-            mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
-
-            // Read low temperature from cursor and update view
-            double low = data.getDouble(COL_WEATHER_MIN_TEMP);
-            String lowString = Utility.formatTemperature(getActivity(), low);
-            mLowTempView.setText(lowString);
-            mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
-
-            // Read humidity from cursor and update view
-            float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
-            mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
-            mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
-            mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
-
-            // Read wind speed and direction from cursor and update view
-            float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
-            float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
-            mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
-            mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
-            mWindLabelView.setContentDescription(mWindView.getContentDescription());
-
-            // Read pressure from cursor and update view
-            float pressure = data.getFloat(COL_WEATHER_PRESSURE);
-            mPressureView.setText(getString(R.string.format_pressure, pressure));
-            mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
-            mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
-
-            // We still need this for the share intent
-            mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+        // Read weather condition ID from cursor
+        int weatherId = data.getInt(COL_WEATHER_CONDITION_ID);
 
+        if ( Utility.usingLocalGraphics(getActivity()) ) {
+            mIconView.setImageResource(Utility.getArtResourceForWeatherCondition(weatherId));
+        } else {
+            // Use weather art image
+            Glide.with(this)
+                    .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
+                    .error(Utility.getArtResourceForWeatherCondition(weatherId))
+                    .crossFade()
+                    .into(mIconView);
         }
+
+        // Read date from cursor and update views for day of week and date
+        long date = data.getLong(COL_WEATHER_DATE);
+        String dateText = Utility.getFullFriendlyDayString(getActivity(),date);
+        mDateView.setText(dateText);
+
+        // Get description from weather condition ID
+        String description = Utility.getStringForWeatherCondition(getActivity(), weatherId);
+        mDescriptionView.setText(description);
+        mDescriptionView.setContentDescription(getString(R.string.a11y_forecast, description));
+
+        // For accessibility, add a content description to the icon field. Because the ImageView
+        // is independently focusable, it's better to have a description of the image. Using
+        // null is appropriate when the image is purely decorative or when the image already
+        // has text describing it in the same UI component.
+        mIconView.setContentDescription(getString(R.string.a11y_forecast_icon, description));
+
+        // Read high temperature from cursor and update view
+        boolean isMetric = Utility.isMetric(getActivity());
+
+        double high = data.getDouble(COL_WEATHER_MAX_TEMP);
+        String highString = Utility.formatTemperature(getActivity(), high);
+        mHighTempView.setText(highString);
+        mHighTempView.setContentDescription(getString(R.string.a11y_high_temp, highString));
+
+        // Read low temperature from cursor and update view
+        double low = data.getDouble(COL_WEATHER_MIN_TEMP);
+        String lowString = Utility.formatTemperature(getActivity(), low);
+        mLowTempView.setText(lowString);
+        mLowTempView.setContentDescription(getString(R.string.a11y_low_temp, lowString));
+
+        // Read humidity from cursor and update view
+        float humidity = data.getFloat(COL_WEATHER_HUMIDITY);
+        mHumidityView.setText(getActivity().getString(R.string.format_humidity, humidity));
+        mHumidityView.setContentDescription(getString(R.string.a11y_humidity, mHumidityView.getText()));
+        mHumidityLabelView.setContentDescription(mHumidityView.getContentDescription());
+
+        // Read wind speed and direction from cursor and update view
+        float windSpeedStr = data.getFloat(COL_WEATHER_WIND_SPEED);
+        float windDirStr = data.getFloat(COL_WEATHER_DEGREES);
+        mWindView.setText(Utility.getFormattedWind(getActivity(), windSpeedStr, windDirStr));
+        mWindView.setContentDescription(getString(R.string.a11y_wind, mWindView.getText()));
+        mWindLabelView.setContentDescription(mWindView.getContentDescription());
+
+        // Read pressure from cursor and update view
+        float pressure = data.getFloat(COL_WEATHER_PRESSURE);
+        mPressureView.setText(getString(R.string.format_pressure, pressure));
+        mPressureView.setContentDescription(getString(R.string.a11y_pressure, mPressureView.getText()));
+        mPressureLabelView.setContentDescription(mPressureView.getContentDescription());
+
+        // We still need this for the share intent
+        mForecast = String.format("%s - %s - %s/%s", dateText, description, high, low);
+    }
+
+    private void finishBinding() {
         AppCompatActivity activity = (AppCompatActivity)getActivity();
         Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
 
         // We need to start the enter transition after the data has loaded
         if ( mTransitionAnimation ) {
             activity.supportStartPostponedEnterTransition();
-
-            if ( null != toolbarView ) {
-                activity.setSupportActionBar(toolbarView);
-
-                activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
-                activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+        if ( activity instanceof DetailActivity ) {
+            if ( getUserVisibleHint() ) {
+                setToolbarAsActionBar();
             }
         } else {
             if ( null != toolbarView ) {
@@ -287,6 +361,17 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
         }
     }
 
+    private void setToolbarAsActionBar() {
+        AppCompatActivity activity = (AppCompatActivity)getActivity();
+        Toolbar toolbarView = (Toolbar) getView().findViewById(R.id.toolbar);
+        if ( null != toolbarView ) {
+            activity.setSupportActionBar(toolbarView);
+
+            activity.getSupportActionBar().setDisplayShowTitleEnabled(false);
+            activity.getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        }
+    }
+
     @Override
     public void onLoaderReset(Loader<Cursor> loader) { }
 }
\ No newline at end of file
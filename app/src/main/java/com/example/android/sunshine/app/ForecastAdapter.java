@@ -30,7 +30,9 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.JankStats;
 
 /**
  * {@link ForecastAdapter} exposes a list of weather forecasts
@@ -49,6 +51,8 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
     final private ForecastAdapterOnClickHandler mClickHandler;
     final private View mEmptyView;
     final private ItemChoiceManager mICM;
+    final private JankStats.Screen mJankStats =
+            JankStats.getInstance().getScreen(JankStats.SCREEN_FORECAST_LIST);
 
     /**
      * Cache of the children views for a forecast list item.
@@ -88,6 +92,9 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         mContext = context;
         mClickHandler = dh;
         mEmptyView = emptyView;
+        // Stable IDs let the ItemChoiceManager follow the selection across cursor swaps.  This
+        // has to be set before anything registers an observer on the adapter.
+        setHasStableIds(true);
         mICM = new ItemChoiceManager(this);
         mICM.setChoiceMode(choiceMode);
     }
@@ -124,6 +131,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
 
     @Override
     public void onBindViewHolder(ForecastAdapterViewHolder forecastAdapterViewHolder, int position) {
+        long bindStart = System.nanoTime();
         mCursor.moveToPosition(position);
         int weatherId = mCursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
         int defaultImage;
@@ -144,6 +152,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         } else {
             Glide.with(mContext)
                     .load(Utility.getArtUrlForWeatherCondition(mContext, weatherId))
+                    .diskCacheStrategy(DiskCacheStrategy.ALL)
                     .error(defaultImage)
                     .crossFade()
                     .into(forecastAdapterViewHolder.mIconView);
@@ -183,6 +192,7 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         forecastAdapterViewHolder.mLowTempView.setContentDescription(mContext.getString(R.string.a11y_low_temp, lowString));
 
         mICM.onBindViewHolder(forecastAdapterViewHolder, position);
+        mJankStats.recordBind(System.nanoTime() - bindStart);
     }
 
     public void onRestoreInstanceState(Bundle savedInstanceState) {
@@ -206,6 +216,14 @@ public class ForecastAdapter extends RecyclerView.Adapter<ForecastAdapter.Foreca
         return (position == 0 && mUseTodayLayout) ? VIEW_TYPE_TODAY : VIEW_TYPE_FUTURE_DAY;
     }
 
+    @Override
+    public long getItemId(int position) {
+        if ( null == mCursor || !mCursor.moveToPosition(position) ) return RecyclerView.NO_ID;
+        // Not the row id: a sync replaces every row, giving the same days new ids.  The
+        // normalized date is unique within a location, and outlives the rows.
+        return mCursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+    }
+
     @Override
     public int getItemCount() {
         if ( null == mCursor ) return 0;
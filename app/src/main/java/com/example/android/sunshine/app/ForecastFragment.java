@@ -28,7 +28,6 @@ import android.preference.PreferenceManager;
 import android.support.design.widget.AppBarLayout;
 import android.support.v4.app.Fragment;
 import android.support.v4.app.LoaderManager;
-import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
 import android.support.v4.view.ViewCompat;
 import android.support.v7.widget.LinearLayoutManager;
@@ -46,6 +45,8 @@ import android.widget.AbsListView;
 import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.perf.FrameTracker;
+import com.example.android.sunshine.app.perf.JankStats;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -59,13 +60,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     private int mChoiceMode;
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
+    private FrameTracker mFrameTracker;
 
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
     // For the forecast view we're showing only a small subset of the stored data.
     // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
+    static final String[] FORECAST_COLUMNS = {
             // In this case the id needs to be fully qualified with a table name, since
             // the content provider joins the location & weather tables in the background
             // (both have an _id column)
@@ -105,6 +107,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
          * DetailFragmentCallback for when an item has been selected.
          */
         public void onItemSelected(Uri dateUri, ForecastAdapter.ForecastAdapterViewHolder vh);
+
+        /**
+         * Called when the list first shows forecast rows.
+         */
+        public void onForecastShown();
     }
 
     public ForecastFragment() {
@@ -200,6 +207,22 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        // Track frame timing while the list moves, and time the other scroll listeners,
+        // which run on every scroll event
+        final JankStats.Screen jankStats =
+                JankStats.getInstance().getScreen(JankStats.SCREEN_FORECAST_LIST);
+        mFrameTracker = FrameTracker.create(getActivity(), JankStats.SCREEN_FORECAST_LIST);
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    mFrameTracker.stop();
+                } else {
+                    mFrameTracker.start();
+                }
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
@@ -208,12 +231,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
                         super.onScrolled(recyclerView, dx, dy);
+                        long start = System.nanoTime();
                         int max = parallaxView.getHeight();
                         if (dy > 0) {
                             parallaxView.setTranslationY(Math.max(-max, parallaxView.getTranslationY() - dy / 2));
                         } else {
                             parallaxView.setTranslationY(Math.min(0, parallaxView.getTranslationY() - dy / 2));
                         }
+                        jankStats.recordScrollListener(System.nanoTime() - start);
                     }
                 });
             }
@@ -227,11 +252,13 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
                     @Override
                     public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                        long start = System.nanoTime();
                         if (0 == mRecyclerView.computeVerticalScrollOffset()) {
                             appbarView.setElevation(0);
                         } else {
                             appbarView.setElevation(appbarView.getTargetElevation());
                         }
+                        jankStats.recordScrollListener(System.nanoTime() - start);
                     }
                 });
             }
@@ -313,15 +340,19 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         String sortOrder = WeatherContract.WeatherEntry.COLUMN_DATE + " ASC";
 
         String locationSetting = Utility.getPreferredLocation(getActivity());
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                locationSetting, System.currentTimeMillis());
+        // Shows what is stored straight away, and refreshes it in the background if it expired
+        Uri weatherForLocationUri = WeatherContract.buildRevalidatingUri(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationSetting, System.currentTimeMillis()));
 
-        return new CursorLoader(getActivity(),
+        // Indexed by date while loading, so that the initial selection can be found quickly
+        return new DateIndexedCursor.Loader(getActivity(),
                 weatherForLocationUri,
                 FORECAST_COLUMNS,
                 null,
                 null,
-                sortOrder);
+                sortOrder,
+                COL_WEATHER_DATE);
     }
 
     @Override
@@ -338,18 +369,14 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
                     // we see Children.
                     if (mRecyclerView.getChildCount() > 0) {
                         mRecyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        ((Callback) getActivity()).onForecastShown();
                         int position = mForecastAdapter.getSelectedItemPosition();
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
                             Cursor data = mForecastAdapter.getCursor();
-                            int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
-                            for ( int i = 0; i < count; i++ ) {
-                                data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
-                                    position = i;
-                                    break;
-                                }
+                            if (data instanceof DateIndexedCursor) {
+                                position = ((DateIndexedCursor) data)
+                                        .getPositionForDate(mInitialSelectedDate);
                             }
                         }
                         if (position == RecyclerView.NO_POSITION) position = 0;
@@ -380,6 +407,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         if (null != mRecyclerView) {
             mRecyclerView.clearOnScrollListeners();
         }
+        if (null != mFrameTracker) {
+            mFrameTracker.stop();
+        }
     }
 
     @Override
@@ -28,8 +28,10 @@ import android.widget.AbsListView;
 import android.widget.Checkable;
 
 /**
- * The ItemChoiceManager class keeps track of which positions have been selected.  Note that it
- * doesn't take advantage of new adapter features to track changes in the underlying data.
+ * The ItemChoiceManager class keeps track of which positions have been selected.  When the
+ * adapter has stable IDs, the selection follows the checked items across changes in the
+ * underlying data using an ID to position index kept up to date from the adapter's change
+ * notifications.
  */
 public class ItemChoiceManager {
     private final String LOG_TAG = MainActivity.class.getSimpleName();
@@ -41,8 +43,92 @@ public class ItemChoiceManager {
         @Override
         public void onChanged() {
             super.onChanged();
-            if (mAdapter != null && mAdapter.hasStableIds())
-                confirmCheckedPositionsById(mAdapter.getItemCount());
+            if (mAdapter != null && mAdapter.hasStableIds()) {
+                // A full data set change tells us nothing about where items went, so the index
+                // has to be rebuilt before it is trusted again.
+                mIdIndexValid = false;
+                confirmCheckedPositionsById();
+            }
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            if (mAdapter != null && mAdapter.hasStableIds()) {
+                if (mIdIndexValid && positionStart + itemCount <= mIndexedCount) {
+                    for (int position = positionStart; position < positionStart + itemCount; position++) {
+                        unindex(position);
+                        mPositionIds[position] = mAdapter.getItemId(position);
+                    }
+                    reindex(positionStart, positionStart + itemCount);
+                } else {
+                    mIdIndexValid = false;
+                }
+                confirmCheckedPositionsById();
+            }
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            if (mAdapter != null && mAdapter.hasStableIds()) {
+                if (mIdIndexValid && positionStart <= mIndexedCount) {
+                    long[] positionIds = new long[mIndexedCount + itemCount];
+                    System.arraycopy(mPositionIds, 0, positionIds, 0, positionStart);
+                    System.arraycopy(mPositionIds, positionStart, positionIds,
+                            positionStart + itemCount, mIndexedCount - positionStart);
+                    for (int position = positionStart; position < positionStart + itemCount; position++) {
+                        positionIds[position] = mAdapter.getItemId(position);
+                    }
+                    mPositionIds = positionIds;
+                    mIndexedCount += itemCount;
+                    reindex(positionStart, mIndexedCount);
+                } else {
+                    mIdIndexValid = false;
+                }
+                confirmCheckedPositionsById();
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            if (mAdapter != null && mAdapter.hasStableIds()) {
+                if (mIdIndexValid && positionStart + itemCount <= mIndexedCount) {
+                    for (int position = positionStart; position < positionStart + itemCount; position++) {
+                        unindex(position);
+                    }
+                    System.arraycopy(mPositionIds, positionStart + itemCount, mPositionIds,
+                            positionStart, mIndexedCount - positionStart - itemCount);
+                    mIndexedCount -= itemCount;
+                    reindex(positionStart, mIndexedCount);
+                } else {
+                    mIdIndexValid = false;
+                }
+                confirmCheckedPositionsById();
+            }
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            if (mAdapter != null && mAdapter.hasStableIds()) {
+                if (mIdIndexValid) {
+                    if (itemCount == 1 && Math.max(fromPosition, toPosition) < mIndexedCount) {
+                        long movedId = mPositionIds[fromPosition];
+                        if (fromPosition < toPosition) {
+                            System.arraycopy(mPositionIds, fromPosition + 1, mPositionIds,
+                                    fromPosition, toPosition - fromPosition);
+                        } else {
+                            System.arraycopy(mPositionIds, toPosition, mPositionIds,
+                                    toPosition + 1, fromPosition - toPosition);
+                        }
+                        mPositionIds[toPosition] = movedId;
+                        reindex(Math.min(fromPosition, toPosition),
+                                Math.max(fromPosition, toPosition) + 1);
+                    } else {
+                        // RecyclerView itself only dispatches single item moves
+                        mIdIndexValid = false;
+                    }
+                }
+                confirmCheckedPositionsById();
+            }
         }
     };
 
@@ -53,14 +139,20 @@ public class ItemChoiceManager {
 
     public ItemChoiceManager(RecyclerView.Adapter adapter) {
         mAdapter = adapter;
+        mAdapter.registerAdapterDataObserver(mAdapterDataObserver);
     }
 
     /**
-     * How many positions in either direction we will search to try to
-     * find a checked item with a stable ID that moved position across
-     * a data set change. If the item isn't found it will be unselected.
+     * Index of stable IDs by adapter position, and the reverse lookup of adapter position by
+     * stable ID.  Both are built in a single pass over the adapter the first time they are
+     * needed after a full data set change, and patched in place for the finer grained range
+     * notifications, so re-finding a checked item that moved costs one lookup no matter how
+     * far it moved.
      */
-    private static final int CHECK_POSITION_SEARCH_DISTANCE = 20;
+    private long[] mPositionIds = new long[0];
+    private int mIndexedCount;
+    private final LongSparseArray<Integer> mIdPositions = new LongSparseArray<Integer>();
+    private boolean mIdIndexValid;
 
     /**
      * Running state of which positions are currently checked
@@ -109,6 +201,11 @@ public class ItemChoiceManager {
             case AbsListView.CHOICE_MODE_MULTIPLE: {
                 boolean checked = mCheckStates.get(position, false);
                 mCheckStates.put(position, !checked);
+                if (checked) {
+                    mCheckedIdStates.delete(mAdapter.getItemId(position));
+                } else {
+                    mCheckedIdStates.put(mAdapter.getItemId(position), position);
+                }
                 // We directly call onBindViewHolder here because notifying that an item has
                 // changed on an item that has the focus causes it to lose focus, which makes
                 // keyboard navigation a bit annoying
@@ -154,40 +251,60 @@ public class ItemChoiceManager {
         mCheckedIdStates.clear();
     }
 
-    void confirmCheckedPositionsById(int oldItemCount) {
+    void confirmCheckedPositionsById() {
         // Clear out the positional check states, we'll rebuild it below from IDs.
         mCheckStates.clear();
+        // An empty adapter usually just means a new cursor is on its way, so hang on to the
+        // checked IDs until there is something to look them up in.
+        if (mCheckedIdStates.size() == 0 || mAdapter.getItemCount() == 0) {
+            return;
+        }
+        ensureIdIndex();
 
         for (int checkedIndex = 0; checkedIndex < mCheckedIdStates.size(); checkedIndex++) {
             final long id = mCheckedIdStates.keyAt(checkedIndex);
-            final int lastPos = mCheckedIdStates.valueAt(checkedIndex);
-
-            final long lastPosId = mAdapter.getItemId(lastPos);
-            if (id != lastPosId) {
-                // Look around to see if the ID is nearby. If not, uncheck it.
-                final int start = Math.max(0, lastPos - CHECK_POSITION_SEARCH_DISTANCE);
-                final int end = Math.min(lastPos + CHECK_POSITION_SEARCH_DISTANCE, oldItemCount);
-                boolean found = false;
-                for (int searchPos = start; searchPos < end; searchPos++) {
-                    final long searchId = mAdapter.getItemId(searchPos);
-                    if (id == searchId) {
-                        found = true;
-                        mCheckStates.put(searchPos, true);
-                        mCheckedIdStates.setValueAt(checkedIndex, searchPos);
-                        break;
-                    }
-                }
-
-                if (!found) {
-                    mCheckedIdStates.delete(id);
-                    checkedIndex--;
-                }
+            final Integer position = mIdPositions.get(id);
+            if (position == null) {
+                // The item is gone from the data set, so uncheck it.
+                mCheckedIdStates.removeAt(checkedIndex);
+                checkedIndex--;
             } else {
-                mCheckStates.put(lastPos, true);
+                mCheckStates.put(position, true);
+                mCheckedIdStates.setValueAt(checkedIndex, position);
             }
         }
     }
 
+    private void ensureIdIndex() {
+        if (mIdIndexValid) {
+            return;
+        }
+        mIndexedCount = mAdapter.getItemCount();
+        if (mPositionIds.length < mIndexedCount) {
+            mPositionIds = new long[mIndexedCount];
+        }
+        for (int position = 0; position < mIndexedCount; position++) {
+            mPositionIds[position] = mAdapter.getItemId(position);
+        }
+        mIdPositions.clear();
+        reindex(0, mIndexedCount);
+        mIdIndexValid = true;
+    }
+
+    private void reindex(int start, int end) {
+        for (int position = start; position < end; position++) {
+            mIdPositions.put(mPositionIds[position], position);
+        }
+    }
+
+    private void unindex(int position) {
+        final long id = mPositionIds[position];
+        final Integer indexedPosition = mIdPositions.get(id);
+        if (indexedPosition != null && indexedPosition == position) {
+            mIdPositions.delete(id);
+        }
+    }
+
     public void onBindViewHolder(RecyclerView.ViewHolder vh, int position) {
         boolean checked = isItemChecked(position);
         if (vh.itemView instanceof Checkable) {
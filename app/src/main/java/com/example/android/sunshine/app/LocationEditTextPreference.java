@@ -20,15 +20,23 @@ import android.app.AlertDialog;
 import android.app.Dialog;
 import android.content.Context;
 import android.content.res.TypedArray;
+import android.database.Cursor;
+import android.database.DataSetObserver;
 import android.os.Bundle;
 import android.preference.EditTextPreference;
+import android.support.v4.widget.SimpleCursorAdapter;
 import android.text.Editable;
+import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.util.AttributeSet;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.FilterQueryProvider;
+
+import com.example.android.sunshine.app.data.WeatherContract;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -36,10 +44,38 @@ import com.google.android.gms.common.GooglePlayServicesNotAvailableException;
 import com.google.android.gms.common.GooglePlayServicesRepairableException;
 import com.google.android.gms.location.places.ui.PlacePicker;
 
+import java.util.regex.Pattern;
+
+/**
+ * Location preference that suggests known cities as the user types, and warns about a location
+ * that is neither a city it knows nor a postal code, so that a typo can be caught before it costs
+ * a sync that ends in an invalid location.  The city index is far from complete, so the warning
+ * never stops the user from saving what they typed.
+ */
 public class LocationEditTextPreference extends EditTextPreference {
     static final private int DEFAULT_MINIMUM_LOCATION_LENGTH = 2;
     private int mMinLength;
 
+    private static final String[] SUGGESTION_COLUMNS = {
+            WeatherContract.CitySearchEntry._ID,
+            WeatherContract.CitySearchEntry.COLUMN_CITY_NAME,
+            WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING
+    };
+
+    // These indices are tied to SUGGESTION_COLUMNS
+    private static final int COL_CITY_NAME = 1;
+    private static final int COL_LOCATION_SETTING = 2;
+
+    // Letters, digits, spaces and hyphens, with at least one digit, like "94043", "SW1A 1AA",
+    // "K1A 0B1" or "00-950"
+    private static final Pattern POSTAL_CODE_PATTERN =
+            Pattern.compile("(?=.*[0-9])[A-Za-z0-9][A-Za-z0-9 -]{1,8}[A-Za-z0-9]");
+    // No postal code has a run of letters as long as a word, as in "Lodnon 1"
+    private static final Pattern WORD_PATTERN = Pattern.compile("[A-Za-z]{4,}");
+
+    private AutoCompleteTextView mLocationView;
+    private SimpleCursorAdapter mSuggestionAdapter;
+
     public LocationEditTextPreference(Context context, AttributeSet attrs) {
         super(context, attrs);
         TypedArray a = context.getTheme().obtainStyledAttributes(
@@ -103,12 +139,132 @@ public class LocationEditTextPreference extends EditTextPreference {
         return view;
     }
 
+    @Override
+    protected void onAddEditTextToDialogView(View dialogView, EditText editText) {
+        // Typed into a view that can show suggestions, and copied back when the dialog closes
+        mLocationView = new AutoCompleteTextView(getContext());
+        mLocationView.setInputType(editText.getInputType());
+        mLocationView.setSingleLine(true);
+        mLocationView.setThreshold(1);
+        mLocationView.setText(editText.getText());
+        mLocationView.setSelection(mLocationView.length());
+
+        mSuggestionAdapter = new SimpleCursorAdapter(getContext(),
+                android.R.layout.simple_dropdown_item_1line,
+                null,
+                new String[]{WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING},
+                new int[]{android.R.id.text1},
+                0);
+        // Runs on the filter's background thread, so a keystroke never waits for the query
+        mSuggestionAdapter.setFilterQueryProvider(new FilterQueryProvider() {
+            @Override
+            public Cursor runQuery(CharSequence constraint) {
+                if (TextUtils.isEmpty(constraint)) {
+                    return null;
+                }
+                return getContext().getContentResolver().query(
+                        WeatherContract.CitySearchEntry.buildSearchUri(constraint.toString()),
+                        SUGGESTION_COLUMNS,
+                        null,
+                        null,
+                        null);
+            }
+        });
+        mSuggestionAdapter.setCursorToStringConverter(
+                new SimpleCursorAdapter.CursorToStringConverter() {
+                    @Override
+                    public CharSequence convertToString(Cursor cursor) {
+                        return cursor.getString(COL_LOCATION_SETTING);
+                    }
+                });
+        mSuggestionAdapter.registerDataSetObserver(new DataSetObserver() {
+            @Override
+            public void onChanged() {
+                // Suggestions for the latest text have arrived
+                updateLocationError();
+            }
+
+            @Override
+            public void onInvalidated() {
+                // Clearing the text drops the suggestions without a new query
+                updateLocationError();
+            }
+        });
+        mLocationView.setAdapter(mSuggestionAdapter);
+
+        super.onAddEditTextToDialogView(dialogView, mLocationView);
+    }
+
+    private void updateLocationError() {
+        String location = mLocationView.getText().toString();
+        if (location.length() >= mMinLength && !isRecognized(location)) {
+            mLocationView.setError(getContext().getString(R.string.pref_location_no_match));
+        } else {
+            mLocationView.setError(null);
+        }
+    }
+
+    @Override
+    protected void onDialogClosed(boolean positiveResult) {
+        if (positiveResult && mLocationView != null) {
+            getEditText().setText(mLocationView.getText());
+        }
+        if (mSuggestionAdapter != null) {
+            mSuggestionAdapter.changeCursor(null);
+        }
+        super.onDialogClosed(positiveResult);
+    }
+
+    /**
+     * Enables the OK button for any location long enough to be one.  Whether the weather service
+     * knows it is only worth a warning.
+     */
+    private void updatePositiveButton() {
+        Dialog d = getDialog();
+        if (d instanceof AlertDialog) {
+            Button positiveButton = ((AlertDialog) d).getButton(AlertDialog.BUTTON_POSITIVE);
+            positiveButton.setEnabled(mLocationView.length() >= mMinLength);
+        }
+    }
+
+    /**
+     * @return whether the weather service is likely to know the location: it is the one already
+     * set, a postal code, or one of the current suggestions
+     */
+    private boolean isRecognized(String location) {
+        return location.equals(getText()) || isPostalCode(location) || isSuggested(location);
+    }
+
+    static boolean isPostalCode(String location) {
+        String trimmed = location.trim();
+        return POSTAL_CODE_PATTERN.matcher(trimmed).matches()
+                && !WORD_PATTERN.matcher(trimmed).find();
+    }
+
+    private boolean isSuggested(String location) {
+        Cursor suggestions = mSuggestionAdapter.getCursor();
+        if (suggestions == null) {
+            return false;
+        }
+        String typed = normalize(location);
+        for (int i = 0; suggestions.moveToPosition(i); i++) {
+            if (typed.equals(normalize(suggestions.getString(COL_LOCATION_SETTING)))
+                    || typed.equals(normalize(suggestions.getString(COL_CITY_NAME)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalize(String location) {
+        return location.replace(" ", "").toLowerCase();
+    }
+
     @Override
     protected void showDialog(Bundle state) {
         super.showDialog(state);
 
-        EditText et = getEditText();
-        et.addTextChangedListener(new TextWatcher() {
+        mLocationView.addTextChangedListener(new TextWatcher() {
 
 
             @Override
@@ -123,20 +279,9 @@ public class LocationEditTextPreference extends EditTextPreference {
 
             @Override
             public void afterTextChanged(Editable s) {
-                Dialog d = getDialog();
-                if (d instanceof AlertDialog) {
-                    AlertDialog dialog = (AlertDialog) d;
-                    Button positiveButton = dialog.getButton(AlertDialog.BUTTON_POSITIVE);
-                    // Check if the EditText is empty
-                    if (s.length() < mMinLength) {
-                        // Disable OK button
-                        positiveButton.setEnabled(false);
-                    } else {
-                        // Re-enable the button.
-                        positiveButton.setEnabled(true);
-                    }
-                }
+                updatePositiveButton();
             }
         });
+        updatePositiveButton();
     }
 }
@@ -15,12 +15,14 @@
  */
 package com.example.android.sunshine.app;
 
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.net.Uri;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
 import android.support.v4.app.ActivityCompat;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.app.ActivityOptionsCompat;
 import android.support.v4.util.Pair;
 import android.support.v7.app.AppCompatActivity;
@@ -32,6 +34,7 @@ import android.view.View;
 
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.gcm.RegistrationIntentService;
+import com.example.android.sunshine.app.perf.JankStatsActivity;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.GoogleApiAvailability;
@@ -45,6 +48,7 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
 
     private boolean mTwoPane;
     private String mLocation;
+    private final StartupTasks mStartupTasks = new StartupTasks();
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -89,8 +93,38 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
                     WeatherContract.WeatherEntry.getDateFromUri(contentUri));
         }
 
-        SunshineSyncAdapter.initializeSyncAdapter(this);
+        // Nothing below is needed for the first frame, so keep it out of the way of drawing it
+        final Context appContext = getApplicationContext();
+        mStartupTasks
+                .add("sync-adapter", StartupTasks.PRIORITY_AFTER_FIRST_FRAME, false,
+                        new Runnable() {
+                            @Override
+                            public void run() {
+                                // Binder calls to the account manager, and on first launch
+                                // adding the account and scheduling the syncs
+                                SunshineSyncAdapter.initializeSyncAdapter(appContext);
+                            }
+                        })
+                .add("gcm-registration", StartupTasks.PRIORITY_IDLE, false, new Runnable() {
+                    @Override
+                    public void run() {
+                        registerWithGcm();
+                    }
+                })
+                .start(this);
+    }
+
+    @Override
+    protected void onDestroy() {
+        mStartupTasks.cancel();
+        super.onDestroy();
+    }
 
+    /**
+     * Makes sure we have a GCM token, starting the registration if we don't.  Runs on a
+     * background thread.
+     */
+    private void registerWithGcm() {
         // If Google Play Services is up to date, we'll want to register GCM. If it is not, we'll
         // skip the registration and this device will not receive any downstream messages from
         // our fake server. Because weather alerts are not a core feature of the app, this should
@@ -109,10 +143,21 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         }
     }
 
+    @Override
+    public void onForecastShown() {
+        mStartupTasks.reportFirstContent(this);
+    }
+
+    @VisibleForTesting
+    StartupTasks getStartupTasks() {
+        return mStartupTasks;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.main, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(BuildConfig.DEBUG);
         return true;
     }
 
@@ -127,6 +172,9 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
         if (id == R.id.action_settings) {
             startActivity(new Intent(this, SettingsActivity.class));
             return true;
+        } else if (id == R.id.action_frame_stats) {
+            startActivity(new Intent(this, JankStatsActivity.class));
+            return true;
         }
 
         return super.onOptionsItemSelected(item);
@@ -179,19 +227,28 @@ public class MainActivity extends AppCompatActivity implements ForecastFragment.
     /**
      * Check the device to make sure it has the Google Play Services APK. If
      * it doesn't, display a dialog that allows users to download the APK from
-     * the Google Play Store or enable it in the device's system settings.
+     * the Google Play Store or enable it in the device's system settings.  The check can run
+     * on any thread; the dialog is shown on the main thread.
      */
     private boolean checkPlayServices() {
-        GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
-        int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
+        final GoogleApiAvailability apiAvailability = GoogleApiAvailability.getInstance();
+        final int resultCode = apiAvailability.isGooglePlayServicesAvailable(this);
         if (resultCode != ConnectionResult.SUCCESS) {
-            if (apiAvailability.isUserResolvableError(resultCode)) {
-                apiAvailability.getErrorDialog(this, resultCode,
-                        PLAY_SERVICES_RESOLUTION_REQUEST).show();
-            } else {
-                Log.i(LOG_TAG, "This device is not supported.");
-                finish();
-            }
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    if (isFinishing()) {
+                        return;
+                    }
+                    if (apiAvailability.isUserResolvableError(resultCode)) {
+                        apiAvailability.getErrorDialog(MainActivity.this, resultCode,
+                                PLAY_SERVICES_RESOLUTION_REQUEST).show();
+                    } else {
+                        Log.i(LOG_TAG, "This device is not supported.");
+                        finish();
+                    }
+                }
+            });
             return false;
         }
         return true;
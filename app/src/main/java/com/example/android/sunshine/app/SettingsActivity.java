@@ -16,8 +16,12 @@
 package com.example.android.sunshine.app;
 
 import android.annotation.TargetApi;
+import android.content.ContentValues;
+import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
 import android.preference.ListPreference;
@@ -46,6 +50,22 @@ import com.google.android.gms.maps.model.LatLng;
 public class SettingsActivity extends PreferenceActivity
         implements Preference.OnPreferenceChangeListener, SharedPreferences.OnSharedPreferenceChangeListener {
     protected final static int PLACE_PICKER_REQUEST = 9090;
+
+    // A place picked this close to a stored location reuses that location and its forecast
+    private static final double NEARBY_LOCATION_RADIUS_METERS = 1000;
+
+    private static final String[] NEARBY_LOCATION_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
+            WeatherContract.LocationEntry.COLUMN_COORD_LONG,
+            WeatherContract.LocationEntry.COLUMN_EXPIRES_AT
+    };
+
+    // These indices are tied to NEARBY_LOCATION_COLUMNS
+    private static final int COL_LOCATION_SETTING = 0;
+    private static final int COL_COORD_LAT = 1;
+    private static final int COL_COORD_LONG = 2;
+    private static final int COL_EXPIRES_AT = 3;
     private ImageView mAttribution;
 
     @Override
@@ -196,6 +216,8 @@ public class SettingsActivity extends PreferenceActivity
                 Place place = PlacePicker.getPlace(data, this);
                 String address = place.getAddress().toString();
                 LatLng latLong = place.getLatLng();
+                double latitude = latLong.latitude;
+                double longitude = latLong.longitude;
 
                 // If the provided place doesn't have an address, we'll form a display-friendly
                 // string from the latlng values.
@@ -203,42 +225,96 @@ public class SettingsActivity extends PreferenceActivity
                     address = String.format("(%.2f, %.2f)",latLong.latitude, latLong.longitude);
                 }
 
-                SharedPreferences sharedPreferences =
-                        PreferenceManager.getDefaultSharedPreferences(this);
-                SharedPreferences.Editor editor = sharedPreferences.edit();
-                editor.putString(getString(R.string.pref_location_key), address);
-
-                // Also store the latitude and longitude so that we can use these to get a precise
-                // result from our weather service. We cannot expect the weather service to
-                // understand addresses that Google formats.
-                editor.putFloat(getString(R.string.pref_location_latitude),
-                        (float) latLong.latitude);
-                editor.putFloat(getString(R.string.pref_location_longitude),
-                        (float) latLong.longitude);
-                editor.commit();
-
-                // Tell the SyncAdapter that we've changed the location, so that we can update
-                // our UI with new values. We need to do this manually because we are responding
-                // to the PlacePicker widget result here instead of allowing the
-                // LocationEditTextPreference to handle these changes and invoke our callbacks.
-                Preference locationPreference = findPreference(getString(R.string.pref_location_key));
-                setPreferenceSummary(locationPreference, address);
-
-                // Add attributions for our new PlacePicker location.
-                if (mAttribution != null) {
-                    mAttribution.setVisibility(View.VISIBLE);
-                } else {
-                    // For pre-Honeycomb devices, we cannot add a footer, so we will use a snackbar
-                    View rootView = findViewById(android.R.id.content);
-                    Snackbar.make(rootView, getString(R.string.attribution_text),
-                            Snackbar.LENGTH_LONG).show();
-                }
-
-                Utility.resetLocationStatus(this);
-                SunshineSyncAdapter.syncImmediately(this);
+                // If we already have a location close by, switch to it rather than fetching the
+                // same weather again under a new name. The lookup reads the database, so it runs
+                // off the main thread and the new location is applied once it finishes.
+                new NearbyLocationTask(address, latitude, longitude).execute();
             }
         } else {
             super.onActivityResult(requestCode, resultCode, data);
         }
     }
+
+    private class NearbyLocationTask extends AsyncTask<Void, Void, Void> {
+        private String mAddress;
+        private double mLatitude;
+        private double mLongitude;
+        private boolean mNearbyForecastFresh;
+
+        NearbyLocationTask(String address, double latitude, double longitude) {
+            mAddress = address;
+            mLatitude = latitude;
+            mLongitude = longitude;
+        }
+
+        @Override
+        protected Void doInBackground(Void... params) {
+            Cursor nearby = getContentResolver().query(
+                    WeatherContract.LocationEntry.buildLocationsNearUri(mLatitude, mLongitude,
+                            NEARBY_LOCATION_RADIUS_METERS),
+                    NEARBY_LOCATION_COLUMNS,
+                    null,
+                    null,
+                    null);
+            if (nearby != null) {
+                if (nearby.moveToFirst()) {
+                    mAddress = nearby.getString(COL_LOCATION_SETTING);
+                    mLatitude = nearby.getDouble(COL_COORD_LAT);
+                    mLongitude = nearby.getDouble(COL_COORD_LONG);
+                    mNearbyForecastFresh =
+                            System.currentTimeMillis() < nearby.getLong(COL_EXPIRES_AT);
+                }
+                nearby.close();
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result) {
+            Context context = SettingsActivity.this;
+            SharedPreferences sharedPreferences =
+                    PreferenceManager.getDefaultSharedPreferences(context);
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            editor.putString(getString(R.string.pref_location_key), mAddress);
+
+            // Also store the latitude and longitude so that we can use these to get a precise
+            // result from our weather service. We cannot expect the weather service to
+            // understand addresses that Google formats.
+            editor.putFloat(getString(R.string.pref_location_latitude),
+                    (float) mLatitude);
+            editor.putFloat(getString(R.string.pref_location_longitude),
+                    (float) mLongitude);
+            if (mNearbyForecastFresh) {
+                // The stored forecast came from a successful sync of this location
+                editor.putInt(getString(R.string.pref_location_status_key),
+                        SunshineSyncAdapter.LOCATION_STATUS_OK);
+            }
+            editor.commit();
+
+            // Tell the SyncAdapter that we've changed the location, so that we can update
+            // our UI with new values. We need to do this manually because we are responding
+            // to the PlacePicker widget result here instead of allowing the
+            // LocationEditTextPreference to handle these changes and invoke our callbacks.
+            Preference locationPreference = findPreference(getString(R.string.pref_location_key));
+            setPreferenceSummary(locationPreference, mAddress);
+
+            // Add attributions for our new PlacePicker location.
+            if (mAttribution != null) {
+                mAttribution.setVisibility(View.VISIBLE);
+            } else if (!isFinishing()) {
+                // For pre-Honeycomb devices, we cannot add a footer, so we will use a snackbar
+                View rootView = findViewById(android.R.id.content);
+                Snackbar.make(rootView, getString(R.string.attribution_text),
+                        Snackbar.LENGTH_LONG).show();
+            }
+
+            if (mNearbyForecastFresh) {
+                // Nothing to fetch, but the widgets and the watch still show the old location
+                SunshineSyncAdapter.notifyDataUpdated(context, new ContentValues[0]);
+            } else {
+                Utility.resetLocationStatus(context);
+                SunshineSyncAdapter.syncImmediately(context);
+            }
+        }
+    }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+import android.support.annotation.IntDef;
+import android.support.v4.os.TraceCompat;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs the work an activity needs at startup in order of how soon it is needed, so that only
+ * what the first frame depends on delays it.  Critical tasks run right away, after-first-frame
+ * tasks once the first frame is drawn, and idle tasks when the main thread next runs out of
+ * work after that.  Each task shows up as a "startup:" section in systrace, and the times to
+ * the first frame and to the first content are logged.
+ */
+public class StartupTasks {
+    private static final String LOG_TAG = StartupTasks.class.getSimpleName();
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({PRIORITY_CRITICAL, PRIORITY_AFTER_FIRST_FRAME, PRIORITY_IDLE})
+    public @interface Priority {}
+
+    public static final int PRIORITY_CRITICAL = 0;
+    public static final int PRIORITY_AFTER_FIRST_FRAME = 1;
+    public static final int PRIORITY_IDLE = 2;
+
+    // One thread is enough for a handful of startup tasks, and keeps them off each other's toes
+    private static final Executor sBackgroundExecutor = Executors.newSingleThreadExecutor();
+
+    private static class Task {
+        final String mName;
+        final boolean mMainThread;
+        final Runnable mRunnable;
+
+        Task(String name, boolean mainThread, Runnable runnable) {
+            mName = name;
+            mMainThread = mainThread;
+            mRunnable = runnable;
+        }
+    }
+
+    private final long mStartTime = SystemClock.uptimeMillis();
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Task> mAfterFirstFrameTasks = new ArrayList<>();
+    private final List<Task> mIdleTasks = new ArrayList<>();
+    private boolean mCancelled;
+    private volatile long mFirstContentTime = -1;
+
+    /**
+     * Adds a task.  Critical tasks run straight away, on the calling thread.
+     *
+     * @param name for the trace section and the log
+     * @param onMainThread whether the task touches the UI, otherwise it runs on a background
+     *                     thread
+     */
+    public StartupTasks add(String name, @Priority int priority, boolean onMainThread,
+            Runnable task) {
+        switch (priority) {
+            case PRIORITY_CRITICAL:
+                run(new Task(name, true, task));
+                break;
+            case PRIORITY_AFTER_FIRST_FRAME:
+                mAfterFirstFrameTasks.add(new Task(name, onMainThread, task));
+                break;
+            case PRIORITY_IDLE:
+                mIdleTasks.add(new Task(name, onMainThread, task));
+                break;
+        }
+        return this;
+    }
+
+    /**
+     * Schedules the deferred tasks for after the activity's first frame.
+     */
+    public void start(Activity activity) {
+        final View decorView = activity.getWindow().getDecorView();
+        decorView.getViewTreeObserver().addOnPreDrawListener(
+                new ViewTreeObserver.OnPreDrawListener() {
+                    @Override
+                    public boolean onPreDraw() {
+                        decorView.getViewTreeObserver().removeOnPreDrawListener(this);
+                        // Posted from the traversal, so this runs once the frame is drawn
+                        mHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                onFirstFrame();
+                            }
+                        });
+                        return true;
+                    }
+                });
+    }
+
+    /**
+     * Drops the tasks that haven't been started yet, for when the activity goes away first.
+     */
+    public void cancel() {
+        mCancelled = true;
+        mAfterFirstFrameTasks.clear();
+        mIdleTasks.clear();
+    }
+
+    private void onFirstFrame() {
+        if (mCancelled) {
+            return;
+        }
+        Log.d(LOG_TAG, "First frame after " + (SystemClock.uptimeMillis() - mStartTime) + "ms");
+        dispatch(mAfterFirstFrameTasks);
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                if (!mCancelled) {
+                    dispatch(mIdleTasks);
+                }
+                return false;
+            }
+        });
+    }
+
+    private void dispatch(List<Task> tasks) {
+        for (final Task task : tasks) {
+            if (task.mMainThread) {
+                run(task);
+            } else {
+                sBackgroundExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        StartupTasks.run(task);
+                    }
+                });
+            }
+        }
+        tasks.clear();
+    }
+
+    private static void run(Task task) {
+        long start = SystemClock.uptimeMillis();
+        TraceCompat.beginSection("startup:" + task.mName);
+        try {
+            task.mRunnable.run();
+        } finally {
+            TraceCompat.endSection();
+        }
+        Log.d(LOG_TAG, task.mName + " took " + (SystemClock.uptimeMillis() - start) + "ms");
+    }
+
+    /**
+     * Records that the activity shows its content, and tells the system so that it is counted
+     * in the "Fully drawn" launch time.  Only the first call counts.
+     */
+    public void reportFirstContent(Activity activity) {
+        if (mFirstContentTime != -1) {
+            return;
+        }
+        mFirstContentTime = SystemClock.uptimeMillis() - mStartTime;
+        Log.d(LOG_TAG, "First content after " + mFirstContentTime + "ms");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            activity.reportFullyDrawn();
+        }
+    }
+
+    /**
+     * @return how long after the tasks were created the first content was shown, or -1 if it
+     * hasn't been yet
+     */
+    public long getFirstContentTime() {
+        return mFirstContentTime;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.art;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.IntDef;
+import android.support.v4.util.LruCache;
+import android.util.Log;
+
+import com.bumptech.glide.BitmapRequestBuilder;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Shared cache for the weather imagery used across the app, its widgets, notifications and the
+ * wearable.  Bitmaps are keyed by source image, target size and transform, and are kept in a
+ * bounded in-memory LRU backed by a disk tier of pre-scaled variants, so that each consumer
+ * asking for the same condition at the same size gets it without another download or decode.
+ *
+ * The blocking getters must not be called from the main thread.
+ */
+public class WeatherArtCache {
+    private static final String LOG_TAG = WeatherArtCache.class.getSimpleName();
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({TRANSFORM_NONE, TRANSFORM_FIT_CENTER, TRANSFORM_CENTER_CROP})
+    public @interface Transform {
+    }
+
+    public static final int TRANSFORM_NONE = 0;
+    public static final int TRANSFORM_FIT_CENTER = 1;
+    public static final int TRANSFORM_CENTER_CROP = 2;
+
+    // The wearable background is pushed as a square photo; larger images are discouraged
+    // by the Wear guidelines.
+    public static final int WEARABLE_PHOTO_SIZE = 320;
+
+    private static final String DISK_CACHE_DIR = "weather_art";
+    private static final long MAX_DISK_CACHE_BYTES = 4 * 1024 * 1024;
+    private static final int JPEG_QUALITY = 90;
+
+    private static WeatherArtCache sInstance;
+
+    private final Context mContext;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final File mDiskCacheDir;
+
+    private final AtomicInteger mMemoryHits = new AtomicInteger();
+    private final AtomicInteger mDiskHits = new AtomicInteger();
+    private final AtomicInteger mMisses = new AtomicInteger();
+
+    public static synchronized WeatherArtCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherArtCache(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherArtCache(Context context) {
+        mContext = context;
+        // Use 1/16th of the available heap; weather art is a nicety, not the main content.
+        int maxKilobytes = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        mMemoryCache = new LruCache<String, Bitmap>(maxKilobytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight() / 1024;
+            }
+        };
+        mDiskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+    }
+
+    /**
+     * Returns the icon pack art for the weather condition, scaled to the given size.
+     *
+     * @return the bitmap, or null if it could not be retrieved
+     */
+    public Bitmap getArt(int weatherId, int width, int height, @Transform int transform) {
+        return get(Utility.getArtUrlForWeatherCondition(mContext, weatherId),
+                Utility.getArtResourceForWeatherCondition(weatherId), width, height, transform);
+    }
+
+    /**
+     * Returns the full bleed photo for the weather condition, scaled to the given size.
+     *
+     * @return the bitmap, or null if it could not be retrieved
+     */
+    public Bitmap getPhoto(int weatherId, int width, int height, @Transform int transform) {
+        return get(Utility.getImageUrlForWeatherCondition(weatherId),
+                Utility.getArtResourceForWeatherCondition(weatherId), width, height, transform);
+    }
+
+    /**
+     * Returns the image at the url scaled to the given size, looking in memory, then on disk,
+     * and only then going to the network.  Falls back to the error resource when the image
+     * can't be loaded.
+     *
+     * @return the bitmap, or null if neither the image nor the fallback could be retrieved
+     */
+    public Bitmap get(String url, int errorResId, int width, int height, @Transform int transform) {
+        if (url == null) {
+            return errorResId > 0 ? BitmapFactory.decodeResource(mContext.getResources(), errorResId) : null;
+        }
+        String key = buildKey(url, width, height, transform);
+
+        Bitmap bitmap = mMemoryCache.get(key);
+        if (bitmap != null) {
+            mMemoryHits.incrementAndGet();
+            return bitmap;
+        }
+
+        File file = getDiskFile(key);
+        if (file.exists()) {
+            bitmap = BitmapFactory.decodeFile(file.getPath());
+            if (bitmap != null) {
+                mDiskHits.incrementAndGet();
+                // Touch the file so the disk trim keeps recently used variants around.
+                file.setLastModified(System.currentTimeMillis());
+                mMemoryCache.put(key, bitmap);
+                return bitmap;
+            }
+        }
+
+        mMisses.incrementAndGet();
+        BitmapRequestBuilder<String, Bitmap> request = Glide.with(mContext)
+                .load(url)
+                .asBitmap()
+                .diskCacheStrategy(DiskCacheStrategy.ALL);
+        if (errorResId > 0) {
+            request = request.error(errorResId);
+        }
+        switch (transform) {
+            case TRANSFORM_FIT_CENTER:
+                request = request.fitCenter();
+                break;
+            case TRANSFORM_CENTER_CROP:
+                request = request.centerCrop();
+                break;
+            default:
+                request = request.dontTransform();
+        }
+        try {
+            bitmap = request.into(width, height).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error retrieving weather art from " + url, e);
+            return errorResId > 0 ? BitmapFactory.decodeResource(mContext.getResources(), errorResId) : null;
+        }
+        if (bitmap != null) {
+            mMemoryCache.put(key, bitmap);
+            writeToDisk(file, bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Warms the cache for the conditions in a freshly synced forecast, so that the widgets,
+     * notification and wearable find their variants ready when they are told about the new data.
+     *
+     * @param weatherIds the condition codes of the forecast, starting with today
+     * @param listIconSize the size in pixels of the list and widget icons
+     */
+    public void prefetch(int[] weatherIds, int listIconSize) {
+        if (weatherIds.length == 0) {
+            return;
+        }
+        Set<String> sources = new LinkedHashSet<>();
+        for (int weatherId : weatherIds) {
+            String artUrl = Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            if (artUrl != null && sources.add(artUrl)) {
+                // The list and detail views load through Glide at their own sizes, so only
+                // make sure they find the source locally.
+                downloadSource(artUrl);
+                getArt(weatherId, listIconSize, listIconSize, TRANSFORM_FIT_CENTER);
+            }
+        }
+        getPhoto(weatherIds[0], WEARABLE_PHOTO_SIZE, WEARABLE_PHOTO_SIZE, TRANSFORM_CENTER_CROP);
+        trimDiskCache();
+        Log.d(LOG_TAG, "Prefetched " + sources.size() + " conditions. " + getStats());
+    }
+
+    private void downloadSource(String url) {
+        try {
+            Glide.with(mContext)
+                    .load(url)
+                    .downloadOnly(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL)
+                    .get();
+        } catch (InterruptedException | ExecutionException e) {
+            Log.e(LOG_TAG, "Error downloading weather art from " + url, e);
+        }
+    }
+
+    public int getMemoryHits() {
+        return mMemoryHits.get();
+    }
+
+    public int getDiskHits() {
+        return mDiskHits.get();
+    }
+
+    public int getMisses() {
+        return mMisses.get();
+    }
+
+    /**
+     * @return the fraction of requests served from memory or disk, or 0 if there were none
+     */
+    public float getHitRate() {
+        int hits = mMemoryHits.get() + mDiskHits.get();
+        int total = hits + mMisses.get();
+        return total == 0 ? 0f : (float) hits / total;
+    }
+
+    public String getStats() {
+        return String.format(Locale.US, "memory hits: %d, disk hits: %d, misses: %d (%.1f%% hit rate)",
+                mMemoryHits.get(), mDiskHits.get(), mMisses.get(), getHitRate() * 100);
+    }
+
+    public void clear() {
+        mMemoryCache.evictAll();
+        File[] files = mDiskCacheDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private static String buildKey(String url, int width, int height, int transform) {
+        return url + '|' + width + 'x' + height + '|' + transform;
+    }
+
+    private File getDiskFile(String key) {
+        return new File(mDiskCacheDir, hash(key));
+    }
+
+    private void writeToDisk(File file, Bitmap bitmap) {
+        if (!mDiskCacheDir.exists() && !mDiskCacheDir.mkdirs()) {
+            return;
+        }
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(file);
+            // Icon packs rely on transparency, photos don't and are much smaller as JPEGs.
+            if (bitmap.hasAlpha()) {
+                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            } else {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing weather art to " + file, e);
+            file.delete();
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used variants until the disk tier fits its budget.
+     */
+    void trimDiskCache() {
+        File[] files = mDiskCacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_CACHE_BYTES) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long l = lhs.lastModified();
+                long r = rhs.lastModified();
+                return l < r ? -1 : (l == r ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (total <= MAX_DISK_CACHE_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("MD5");
+            byte[] bytes = digest.digest(key.getBytes());
+            StringBuilder sb = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -0,0 +1,558 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.ClimateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rollups of the daily highs and lows of each location, by week, month, year, calendar day
+ * and all time.  A day is added once, when it is over and its forecast stops changing, so
+ * each bucket holds the count, sum, extremes and a histogram in whole degrees of the days in
+ * it.  Statistics over a range then read one row per bucket, however many days it spans.
+ * <p>
+ * The all time bucket's last date is where the location's rollups are up to, so later days
+ * are added exactly once and days older than it are never added.
+ */
+final class ClimateRollup {
+    private static final String LOG_TAG = ClimateRollup.class.getSimpleName();
+
+    private static final String[] PERIODS = {
+            ClimateEntry.PERIOD_WEEK,
+            ClimateEntry.PERIOD_MONTH,
+            ClimateEntry.PERIOD_YEAR,
+            ClimateEntry.PERIOD_CALENDAR_DAY,
+            ClimateEntry.PERIOD_ALL
+    };
+
+    // What settle reads from the weather table, in this order
+    static final String[] SETTLE_PROJECTION = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+    private static final int COL_LOC_KEY = 0;
+    private static final int COL_DATE = 1;
+    private static final int COL_MAX_TEMP = 2;
+    private static final int COL_MIN_TEMP = 3;
+
+    //date < ? AND the location's rollups don't have the day yet
+    static final String sUnsettledSelection =
+            WeatherEntry.COLUMN_DATE + " < ? AND NOT EXISTS (SELECT 1 FROM " +
+                    ClimateEntry.TABLE_NAME + " WHERE " +
+                    ClimateEntry.TABLE_NAME + "." + ClimateEntry.COLUMN_LOC_KEY + " = " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY + " AND " +
+                    ClimateEntry.TABLE_NAME + "." + ClimateEntry.COLUMN_PERIOD + " = '" +
+                    ClimateEntry.PERIOD_ALL + "' AND " +
+                    ClimateEntry.TABLE_NAME + "." + ClimateEntry.COLUMN_LAST_DATE + " >= " +
+                    WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_DATE + ")";
+
+    // The statistics of each bucket, for queries that ask for all of them
+    static final String[] CLIMATE_COLUMNS = {
+            ClimateEntry._ID,
+            ClimateEntry.COLUMN_BUCKET,
+            ClimateEntry.COLUMN_FIRST_DATE,
+            ClimateEntry.COLUMN_LAST_DATE,
+            ClimateEntry.COLUMN_DAY_COUNT,
+            ClimateEntry.COLUMN_HIGH_MIN,
+            ClimateEntry.COLUMN_HIGH_MAX,
+            ClimateEntry.COLUMN_HIGH_MEAN,
+            ClimateEntry.COLUMN_HIGH_PERCENTILE,
+            ClimateEntry.COLUMN_HIGH_ANOMALY,
+            ClimateEntry.COLUMN_LOW_MIN,
+            ClimateEntry.COLUMN_LOW_MAX,
+            ClimateEntry.COLUMN_LOW_MEAN,
+            ClimateEntry.COLUMN_LOW_PERCENTILE,
+            ClimateEntry.COLUMN_LOW_ANOMALY
+    };
+
+    // What query reads for each bucket, in this order.  The means are computed by SQLite, so
+    // that they can be sorted on.
+    private static final String[] BUCKET_PROJECTION = {
+            ClimateEntry.COLUMN_BUCKET,
+            ClimateEntry.COLUMN_FIRST_DATE,
+            ClimateEntry.COLUMN_LAST_DATE,
+            ClimateEntry.COLUMN_DAY_COUNT,
+            ClimateEntry.COLUMN_HIGH_MIN,
+            ClimateEntry.COLUMN_HIGH_MAX,
+            ClimateEntry.COLUMN_HIGH_SUM + " / " + ClimateEntry.COLUMN_DAY_COUNT + " AS " +
+                    ClimateEntry.COLUMN_HIGH_MEAN,
+            ClimateEntry.COLUMN_HIGH_HISTOGRAM,
+            ClimateEntry.COLUMN_LOW_MIN,
+            ClimateEntry.COLUMN_LOW_MAX,
+            ClimateEntry.COLUMN_LOW_SUM + " / " + ClimateEntry.COLUMN_DAY_COUNT + " AS " +
+                    ClimateEntry.COLUMN_LOW_MEAN,
+            ClimateEntry.COLUMN_LOW_HISTOGRAM
+    };
+    private static final int COL_BUCKET = 0;
+    private static final int COL_FIRST_DATE = 1;
+    private static final int COL_LAST_DATE = 2;
+    private static final int COL_DAY_COUNT = 3;
+    private static final int COL_HIGH_MIN = 4;
+    private static final int COL_HIGH_MAX = 5;
+    private static final int COL_HIGH_MEAN = 6;
+    private static final int COL_HIGH_HISTOGRAM = 7;
+    private static final int COL_LOW_MIN = 8;
+    private static final int COL_LOW_MAX = 9;
+    private static final int COL_LOW_MEAN = 10;
+    private static final int COL_LOW_HISTOGRAM = 11;
+
+    private static final SQLiteQueryBuilder sClimateByLocationSettingQueryBuilder;
+
+    static {
+        //climate INNER JOIN location ON climate.location_id = location._id
+        sClimateByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sClimateByLocationSettingQueryBuilder.setTables(
+                ClimateEntry.TABLE_NAME + " INNER JOIN " +
+                        LocationEntry.TABLE_NAME +
+                        " ON " + ClimateEntry.TABLE_NAME +
+                        "." + ClimateEntry.COLUMN_LOC_KEY +
+                        " = " + LocationEntry.TABLE_NAME +
+                        "." + LocationEntry._ID);
+    }
+
+    //location.location_setting = ? AND period = ?
+    private static final String sLocationSettingAndPeriodSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    ClimateEntry.COLUMN_PERIOD + " = ? ";
+
+    //location_id = ? AND period = ? AND bucket = ?
+    private static final String sBucketSelection =
+            ClimateEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    ClimateEntry.COLUMN_PERIOD + " = ? AND " +
+                    ClimateEntry.COLUMN_BUCKET + " = ? ";
+
+    private ClimateRollup() {
+    }
+
+    /**
+     * @return the bucket of the period that the date falls in
+     */
+    static long getBucket(String period, long date) {
+        Time time = new Time();
+        time.set(date);
+        int julianDay = Time.getJulianDay(date, time.gmtoff);
+        switch (period) {
+            case ClimateEntry.PERIOD_WEEK:
+                // Julian day numbers of Mondays are multiples of 7
+                return time.setJulianDay(julianDay - julianDay % 7);
+            case ClimateEntry.PERIOD_MONTH:
+                return time.setJulianDay(julianDay - time.monthDay + 1);
+            case ClimateEntry.PERIOD_YEAR:
+                return time.setJulianDay(julianDay - time.yearDay);
+            case ClimateEntry.PERIOD_CALENDAR_DAY:
+                return getCalendarDay(time);
+            case ClimateEntry.PERIOD_ALL:
+                return 0;
+            default:
+                throw new UnsupportedOperationException("Unknown period: " + period);
+        }
+    }
+
+    private static int getCalendarDay(Time time) {
+        return (time.month + 1) * 100 + time.monthDay;
+    }
+
+    /**
+     * Adds days to the rollups of their locations.
+     *
+     * @param days the days to add, with the {@link #SETTLE_PROJECTION} columns, ordered by
+     *             location and then date, which {@link #sUnsettledSelection} selects
+     * @return the number of days added
+     */
+    static int settle(SQLiteDatabase db, Cursor days) {
+        Map<String, Bucket> buckets = new HashMap<>();
+        int settled = 0;
+        while (days.moveToNext()) {
+            long locationId = days.getLong(COL_LOC_KEY);
+            long date = days.getLong(COL_DATE);
+            double high = days.getDouble(COL_MAX_TEMP);
+            double low = days.getDouble(COL_MIN_TEMP);
+            for (String period : PERIODS) {
+                long bucket = getBucket(period, date);
+                String key = locationId + "/" + period + "/" + bucket;
+                Bucket rollup = buckets.get(key);
+                if (rollup == null) {
+                    rollup = Bucket.read(db, locationId, period, bucket);
+                    buckets.put(key, rollup);
+                }
+                rollup.add(date, high, low);
+            }
+            settled++;
+        }
+        for (Bucket rollup : buckets.values()) {
+            rollup.write(db);
+        }
+        return settled;
+    }
+
+    /**
+     * @return the statistics of the location's buckets of the period that contain a date from
+     * the start date to the end date
+     */
+    static Cursor query(SQLiteDatabase db, String locationSetting, String period, long startDate,
+                        long endDate, int percentile, String[] projection, String sortOrder) {
+        if (projection == null) {
+            projection = CLIMATE_COLUMNS;
+        }
+        if (sortOrder == null) {
+            sortOrder = ClimateEntry.COLUMN_BUCKET + " ASC";
+        }
+
+        String selection = sLocationSettingAndPeriodSelection;
+        String[] selectionArgs = {locationSetting, period};
+        if (!ClimateEntry.PERIOD_ALL.equals(period)
+                && !(ClimateEntry.PERIOD_CALENDAR_DAY.equals(period)
+                        && spansYear(startDate, endDate))) {
+            long first = getBucket(period, startDate);
+            long last = getBucket(period, endDate);
+            // A range of calendar days may wrap around the end of the year
+            selection += first <= last
+                    ? "AND " + ClimateEntry.COLUMN_BUCKET + " BETWEEN ? AND ? "
+                    : "AND (" + ClimateEntry.COLUMN_BUCKET + " >= ? OR " +
+                    ClimateEntry.COLUMN_BUCKET + " <= ?) ";
+            selectionArgs = new String[]{locationSetting, period,
+                    Long.toString(first), Long.toString(last)};
+        }
+
+        Map<Integer, double[]> normals = null;
+        for (String column : projection) {
+            if (ClimateEntry.COLUMN_HIGH_ANOMALY.equals(column)
+                    || ClimateEntry.COLUMN_LOW_ANOMALY.equals(column)) {
+                normals = getNormals(db, locationSetting);
+                break;
+            }
+        }
+
+        MatrixCursor climate = new MatrixCursor(projection);
+        Cursor buckets = sClimateByLocationSettingQueryBuilder.query(db,
+                BUCKET_PROJECTION,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+        try {
+            while (buckets.moveToNext()) {
+                double[] anomaly = normals != null ? getAnomaly(buckets, normals) : null;
+                Object[] row = new Object[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    row[i] = getColumn(buckets, projection[i], percentile, anomaly);
+                }
+                climate.addRow(row);
+            }
+        } finally {
+            buckets.close();
+        }
+        return climate;
+    }
+
+    /**
+     * @return whether the range covers a whole year, and with it every calendar day, which its
+     * ends' days of the year alone can't tell
+     */
+    private static boolean spansYear(long startDate, long endDate) {
+        Time time = new Time();
+        time.set(startDate);
+        time.year++;
+        return endDate >= time.normalize(true);
+    }
+
+    private static Object getColumn(Cursor bucket, String column, int percentile,
+                                    double[] anomaly) {
+        switch (column) {
+            case ClimateEntry._ID:
+            case ClimateEntry.COLUMN_BUCKET:
+                return bucket.getLong(COL_BUCKET);
+            case ClimateEntry.COLUMN_FIRST_DATE:
+                return bucket.getLong(COL_FIRST_DATE);
+            case ClimateEntry.COLUMN_LAST_DATE:
+                return bucket.getLong(COL_LAST_DATE);
+            case ClimateEntry.COLUMN_DAY_COUNT:
+                return bucket.getInt(COL_DAY_COUNT);
+            case ClimateEntry.COLUMN_HIGH_MIN:
+                return bucket.getDouble(COL_HIGH_MIN);
+            case ClimateEntry.COLUMN_HIGH_MAX:
+                return bucket.getDouble(COL_HIGH_MAX);
+            case ClimateEntry.COLUMN_HIGH_MEAN:
+                return bucket.getDouble(COL_HIGH_MEAN);
+            case ClimateEntry.COLUMN_HIGH_PERCENTILE:
+                return getPercentile(decodeHistogram(bucket.getBlob(COL_HIGH_HISTOGRAM)),
+                        bucket.getInt(COL_DAY_COUNT), percentile);
+            case ClimateEntry.COLUMN_HIGH_ANOMALY:
+                return anomaly != null ? anomaly[0] : null;
+            case ClimateEntry.COLUMN_LOW_MIN:
+                return bucket.getDouble(COL_LOW_MIN);
+            case ClimateEntry.COLUMN_LOW_MAX:
+                return bucket.getDouble(COL_LOW_MAX);
+            case ClimateEntry.COLUMN_LOW_MEAN:
+                return bucket.getDouble(COL_LOW_MEAN);
+            case ClimateEntry.COLUMN_LOW_PERCENTILE:
+                return getPercentile(decodeHistogram(bucket.getBlob(COL_LOW_HISTOGRAM)),
+                        bucket.getInt(COL_DAY_COUNT), percentile);
+            case ClimateEntry.COLUMN_LOW_ANOMALY:
+                return anomaly != null ? anomaly[1] : null;
+            default:
+                throw new IllegalArgumentException("Invalid column " + column);
+        }
+    }
+
+    /**
+     * @return the mean high and low of each calendar day the location has, by MMDD
+     */
+    private static Map<Integer, double[]> getNormals(SQLiteDatabase db, String locationSetting) {
+        Map<Integer, double[]> normals = new HashMap<>();
+        Cursor cursor = sClimateByLocationSettingQueryBuilder.query(db,
+                BUCKET_PROJECTION,
+                sLocationSettingAndPeriodSelection,
+                new String[]{locationSetting, ClimateEntry.PERIOD_CALENDAR_DAY},
+                null,
+                null,
+                null
+        );
+        try {
+            while (cursor.moveToNext()) {
+                normals.put(cursor.getInt(COL_BUCKET), new double[]{
+                        cursor.getDouble(COL_HIGH_MEAN), cursor.getDouble(COL_LOW_MEAN)});
+            }
+        } finally {
+            cursor.close();
+        }
+        return normals;
+    }
+
+    /**
+     * @return how far the bucket's mean high and low are from the normal ones over its days,
+     * or null if there are no normals for them
+     */
+    private static double[] getAnomaly(Cursor bucket, Map<Integer, double[]> normals) {
+        long firstDate = bucket.getLong(COL_FIRST_DATE);
+        long lastDate = bucket.getLong(COL_LAST_DATE);
+        Time time = new Time();
+        time.set(firstDate);
+        int julianDay = Time.getJulianDay(firstDate, time.gmtoff);
+        time.set(lastDate);
+        int lastJulianDay = Time.getJulianDay(lastDate, time.gmtoff);
+
+        double normalHigh = 0;
+        double normalLow = 0;
+        int count = 0;
+        for (; julianDay <= lastJulianDay; julianDay++) {
+            time.setJulianDay(julianDay);
+            double[] normal = normals.get(getCalendarDay(time));
+            if (normal != null) {
+                normalHigh += normal[0];
+                normalLow += normal[1];
+                count++;
+            }
+        }
+        if (count == 0) {
+            return null;
+        }
+        return new double[]{bucket.getDouble(COL_HIGH_MEAN) - normalHigh / count,
+                bucket.getDouble(COL_LOW_MEAN) - normalLow / count};
+    }
+
+    /**
+     * @return the nearest rank percentile of the histogram
+     */
+    static int getPercentile(TreeMap<Integer, Integer> histogram, int count, int percentile) {
+        int rank = Math.max(1, (int) Math.ceil(percentile / 100.0 * count));
+        int seen = 0;
+        for (Map.Entry<Integer, Integer> bin : histogram.entrySet()) {
+            seen += bin.getValue();
+            if (seen >= rank) {
+                return bin.getKey();
+            }
+        }
+        return histogram.isEmpty() ? 0 : histogram.lastKey();
+    }
+
+    /**
+     * Histograms are stored sparsely, as the count of each whole degree that has any.  Layout,
+     * big endian:
+     * <pre>
+     *   short   number of degrees
+     *   per degree, in increasing order:
+     *     short degree
+     *     int   count
+     * </pre>
+     */
+    static byte[] encodeHistogram(TreeMap<Integer, Integer> histogram) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(2 + histogram.size() * 6);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(histogram.size());
+            for (Map.Entry<Integer, Integer> bin : histogram.entrySet()) {
+                out.writeShort(bin.getKey());
+                out.writeInt(bin.getValue());
+            }
+        } catch (IOException e) {
+            // Writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static TreeMap<Integer, Integer> decodeHistogram(byte[] encoded) {
+        TreeMap<Integer, Integer> histogram = new TreeMap<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        try {
+            int size = in.readUnsignedShort();
+            for (int i = 0; i < size; i++) {
+                int degree = in.readShort();
+                histogram.put(degree, in.readInt());
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Truncated histogram", e);
+        }
+        return histogram;
+    }
+
+    /**
+     * The rollup of one bucket, read, added to and written back by settle.
+     */
+    private static final class Bucket {
+        private final long mLocationId;
+        private final String mPeriod;
+        private final long mBucket;
+        private long mFirstDate;
+        private long mLastDate;
+        private int mDayCount;
+        private double mHighSum;
+        private double mHighMin;
+        private double mHighMax;
+        private TreeMap<Integer, Integer> mHighHistogram;
+        private double mLowSum;
+        private double mLowMin;
+        private double mLowMax;
+        private TreeMap<Integer, Integer> mLowHistogram;
+
+        private Bucket(long locationId, String period, long bucket) {
+            mLocationId = locationId;
+            mPeriod = period;
+            mBucket = bucket;
+        }
+
+        static Bucket read(SQLiteDatabase db, long locationId, String period, long bucket) {
+            Bucket rollup = new Bucket(locationId, period, bucket);
+            Cursor cursor = db.query(ClimateEntry.TABLE_NAME,
+                    null,
+                    sBucketSelection,
+                    new String[]{Long.toString(locationId), period, Long.toString(bucket)},
+                    null,
+                    null,
+                    null);
+            try {
+                if (cursor.moveToFirst()) {
+                    rollup.mFirstDate = getLong(cursor, ClimateEntry.COLUMN_FIRST_DATE);
+                    rollup.mLastDate = getLong(cursor, ClimateEntry.COLUMN_LAST_DATE);
+                    rollup.mDayCount = (int) getLong(cursor, ClimateEntry.COLUMN_DAY_COUNT);
+                    rollup.mHighSum = getDouble(cursor, ClimateEntry.COLUMN_HIGH_SUM);
+                    rollup.mHighMin = getDouble(cursor, ClimateEntry.COLUMN_HIGH_MIN);
+                    rollup.mHighMax = getDouble(cursor, ClimateEntry.COLUMN_HIGH_MAX);
+                    rollup.mHighHistogram = decodeHistogram(cursor.getBlob(
+                            cursor.getColumnIndex(ClimateEntry.COLUMN_HIGH_HISTOGRAM)));
+                    rollup.mLowSum = getDouble(cursor, ClimateEntry.COLUMN_LOW_SUM);
+                    rollup.mLowMin = getDouble(cursor, ClimateEntry.COLUMN_LOW_MIN);
+                    rollup.mLowMax = getDouble(cursor, ClimateEntry.COLUMN_LOW_MAX);
+                    rollup.mLowHistogram = decodeHistogram(cursor.getBlob(
+                            cursor.getColumnIndex(ClimateEntry.COLUMN_LOW_HISTOGRAM)));
+                } else {
+                    rollup.mHighHistogram = new TreeMap<>();
+                    rollup.mLowHistogram = new TreeMap<>();
+                }
+            } finally {
+                cursor.close();
+            }
+            return rollup;
+        }
+
+        void add(long date, double high, double low) {
+            if (mDayCount == 0) {
+                mFirstDate = date;
+                mHighMin = high;
+                mHighMax = high;
+                mLowMin = low;
+                mLowMax = low;
+            }
+            mFirstDate = Math.min(mFirstDate, date);
+            mLastDate = Math.max(mLastDate, date);
+            mDayCount++;
+            mHighSum += high;
+            mHighMin = Math.min(mHighMin, high);
+            mHighMax = Math.max(mHighMax, high);
+            addToHistogram(mHighHistogram, high);
+            mLowSum += low;
+            mLowMin = Math.min(mLowMin, low);
+            mLowMax = Math.max(mLowMax, low);
+            addToHistogram(mLowHistogram, low);
+        }
+
+        void write(SQLiteDatabase db) {
+            ContentValues values = new ContentValues();
+            values.put(ClimateEntry.COLUMN_LOC_KEY, mLocationId);
+            values.put(ClimateEntry.COLUMN_PERIOD, mPeriod);
+            values.put(ClimateEntry.COLUMN_BUCKET, mBucket);
+            values.put(ClimateEntry.COLUMN_FIRST_DATE, mFirstDate);
+            values.put(ClimateEntry.COLUMN_LAST_DATE, mLastDate);
+            values.put(ClimateEntry.COLUMN_DAY_COUNT, mDayCount);
+            values.put(ClimateEntry.COLUMN_HIGH_SUM, mHighSum);
+            values.put(ClimateEntry.COLUMN_HIGH_MIN, mHighMin);
+            values.put(ClimateEntry.COLUMN_HIGH_MAX, mHighMax);
+            values.put(ClimateEntry.COLUMN_HIGH_HISTOGRAM, encodeHistogram(mHighHistogram));
+            values.put(ClimateEntry.COLUMN_LOW_SUM, mLowSum);
+            values.put(ClimateEntry.COLUMN_LOW_MIN, mLowMin);
+            values.put(ClimateEntry.COLUMN_LOW_MAX, mLowMax);
+            values.put(ClimateEntry.COLUMN_LOW_HISTOGRAM, encodeHistogram(mLowHistogram));
+            db.insert(ClimateEntry.TABLE_NAME, null, values);
+        }
+
+        private static void addToHistogram(TreeMap<Integer, Integer> histogram, double value) {
+            int degree = (int) Math.round(value);
+            Integer count = histogram.get(degree);
+            histogram.put(degree, count == null ? 1 : count + 1);
+        }
+
+        private static long getLong(Cursor cursor, String column) {
+            return cursor.getLong(cursor.getColumnIndex(column));
+        }
+
+        private static double getDouble(Cursor cursor, String column) {
+            return cursor.getDouble(cursor.getColumnIndex(column));
+        }
+    }
+}
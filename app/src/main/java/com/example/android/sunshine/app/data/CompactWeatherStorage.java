@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+
+/**
+ * The compact layout of the weather table, for databases that keep long histories.  Instead of
+ * repeating the description on every row it is stored once per condition code in a dictionary
+ * table, and the measurements are stored as integer tenths, which SQLite packs into one or two
+ * bytes instead of an eight byte REAL.
+ * <p>
+ * The layout is chosen when the database is created.  The provider encodes values on the way in
+ * with {@link #encode}, and its queries decode them with the query builders here, so that
+ * cursors have the same columns and values, to a tenth, in either layout.
+ * <p>
+ * Selections are not rewritten.  A selection on one of the {@link #SCALED_COLUMNS} compares
+ * the stored tenths, since SQLite resolves names in a WHERE clause to the table's columns before
+ * the decoded result columns, so its values have to be scaled by {@link #SCALE} to match.  Sort
+ * orders need nothing, as scaling keeps the order.
+ */
+final class CompactWeatherStorage {
+
+    // Table holding the description for each condition code
+    static final String CONDITION_TABLE_NAME = "weather_condition";
+
+    // The measurements stored as integer tenths
+    static final String[] SCALED_COLUMNS = {
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    static final int SCALE = 10;
+
+    // The weather columns in table order, for queries that ask for all of them
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private static final String[] LOCATION_COLUMNS = {
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            LocationEntry.COLUMN_CITY_NAME,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG,
+            LocationEntry.COLUMN_FETCHED_AT,
+            LocationEntry.COLUMN_EXPIRES_AT,
+            LocationEntry.COLUMN_GEOHASH
+    };
+
+    static final SQLiteQueryBuilder sWeatherQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+
+    static {
+        //weather LEFT JOIN weather_condition
+        //ON weather.weather_id = weather_condition.weather_id
+        String weatherWithCondition = WeatherEntry.TABLE_NAME + " LEFT JOIN " +
+                CONDITION_TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_WEATHER_ID +
+                " = " + CONDITION_TABLE_NAME + "." + WeatherEntry.COLUMN_WEATHER_ID;
+
+        HashMap<String, String> weatherColumns = new HashMap<>();
+        for (String column : WEATHER_COLUMNS) {
+            weatherColumns.put(column,
+                    WeatherEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        // Some callers qualify the id, since it's ambiguous once the location table is joined
+        weatherColumns.put(WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+                WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID + " AS " + WeatherEntry._ID);
+        weatherColumns.put(WeatherEntry.COLUMN_SHORT_DESC,
+                CONDITION_TABLE_NAME + "." + WeatherEntry.COLUMN_SHORT_DESC +
+                        " AS " + WeatherEntry.COLUMN_SHORT_DESC);
+        for (String column : SCALED_COLUMNS) {
+            weatherColumns.put(column, WeatherEntry.TABLE_NAME + "." + column +
+                    " / " + SCALE + ".0 AS " + column);
+        }
+
+        sWeatherQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherQueryBuilder.setTables(weatherWithCondition);
+        sWeatherQueryBuilder.setProjectionMap(weatherColumns);
+
+        HashMap<String, String> weatherAndLocationColumns = new HashMap<>(weatherColumns);
+        for (String column : LOCATION_COLUMNS) {
+            weatherAndLocationColumns.put(column,
+                    LocationEntry.TABLE_NAME + "." + column + " AS " + column);
+        }
+        weatherAndLocationColumns.put(LocationEntry.TABLE_NAME + "." + LocationEntry._ID,
+                LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+
+        sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sWeatherByLocationSettingQueryBuilder.setTables(weatherWithCondition +
+                " INNER JOIN " + LocationEntry.TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY +
+                " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+        sWeatherByLocationSettingQueryBuilder.setProjectionMap(weatherAndLocationColumns);
+    }
+
+    private CompactWeatherStorage() {
+    }
+
+    static String getCreateWeatherTableColumns() {
+        StringBuilder columns = new StringBuilder();
+        for (String column : SCALED_COLUMNS) {
+            columns.append(column).append(" INTEGER NOT NULL, ");
+        }
+        return columns.toString();
+    }
+
+    static void createConditionTable(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + CONDITION_TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER PRIMARY KEY, " +
+                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL);");
+    }
+
+    /**
+     * @return whether the database was created with the compact layout
+     */
+    static boolean isCompact(SQLiteDatabase db) {
+        Cursor c = db.rawQuery("SELECT name FROM sqlite_master WHERE type='table' AND name=?",
+                new String[]{CONDITION_TABLE_NAME});
+        try {
+            return c.moveToFirst();
+        } finally {
+            c.close();
+        }
+    }
+
+    /**
+     * @return the columns to read when the caller asks for all of them
+     */
+    static String[] getDefaultProjection(boolean withLocation) {
+        if (!withLocation) {
+            return WEATHER_COLUMNS;
+        }
+        String[] columns = new String[WEATHER_COLUMNS.length + LOCATION_COLUMNS.length];
+        System.arraycopy(WEATHER_COLUMNS, 0, columns, 0, WEATHER_COLUMNS.length);
+        System.arraycopy(LOCATION_COLUMNS, 0, columns, WEATHER_COLUMNS.length,
+                LOCATION_COLUMNS.length);
+        return columns;
+    }
+
+    /**
+     * Turns weather values into their compact form, in place.  The description moves to the
+     * dictionary, which has to happen in the same transaction as writing the row.
+     */
+    static void encode(SQLiteDatabase db, ContentValues values) {
+        String description = values.getAsString(WeatherEntry.COLUMN_SHORT_DESC);
+        values.remove(WeatherEntry.COLUMN_SHORT_DESC);
+        Integer weatherId = values.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+        if (description != null && weatherId != null) {
+            ContentValues condition = new ContentValues(2);
+            condition.put(WeatherEntry.COLUMN_WEATHER_ID, weatherId);
+            condition.put(WeatherEntry.COLUMN_SHORT_DESC, description);
+            db.insertWithOnConflict(CONDITION_TABLE_NAME, null, condition,
+                    SQLiteDatabase.CONFLICT_REPLACE);
+        }
+
+        for (String column : SCALED_COLUMNS) {
+            Double value = values.getAsDouble(column);
+            if (value != null) {
+                values.put(column, Math.round(value * SCALE));
+            }
+        }
+    }
+}
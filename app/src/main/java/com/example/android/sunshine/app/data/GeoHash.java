@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Geohashes of coordinates, which let nearby locations be found with range scans on an ordinary
+ * index.  Each character of a geohash adds five bits that alternately halve the longitude and
+ * latitude ranges, so every location whose geohash starts with a prefix lies in that prefix's
+ * cell.
+ */
+final class GeoHash {
+    // Cells of roughly 5m by 5m, far finer than any radius we search with
+    static final int MAX_PRECISION = 9;
+
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final int BITS_PER_CHAR = 5;
+
+    private static final double EARTH_RADIUS_METERS = 6371000;
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS_METERS / 180;
+
+    private GeoHash() {
+    }
+
+    static String encode(double lat, double lon, int precision) {
+        double minLat = -90;
+        double maxLat = 90;
+        double minLon = -180;
+        double maxLon = 180;
+
+        StringBuilder hash = new StringBuilder(precision);
+        boolean lonBit = true;
+        int bits = 0;
+        int ch = 0;
+        while (hash.length() < precision) {
+            ch <<= 1;
+            if (lonBit) {
+                double mid = (minLon + maxLon) / 2;
+                if (lon >= mid) {
+                    ch |= 1;
+                    minLon = mid;
+                } else {
+                    maxLon = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (lat >= mid) {
+                    ch |= 1;
+                    minLat = mid;
+                } else {
+                    maxLat = mid;
+                }
+            }
+            lonBit = !lonBit;
+            if (++bits == BITS_PER_CHAR) {
+                hash.append(BASE32.charAt(ch));
+                bits = 0;
+                ch = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+    static double cellHeightDegrees(int precision) {
+        int latBits = BITS_PER_CHAR * precision / 2;
+        return 180.0 / (1L << latBits);
+    }
+
+    static double cellWidthDegrees(int precision) {
+        int lonBits = (BITS_PER_CHAR * precision + 1) / 2;
+        return 360.0 / (1L << lonBits);
+    }
+
+    /**
+     * @return the finest precision whose cells are at least the radius across at the latitude,
+     * so that the cell around a point and the cells next to it cover the whole circle
+     */
+    static int precisionForRadius(double lat, double radiusMeters) {
+        double metersPerDegreeLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(lat));
+        for (int precision = MAX_PRECISION; precision > 1; precision--) {
+            if (cellHeightDegrees(precision) * METERS_PER_DEGREE >= radiusMeters
+                    && cellWidthDegrees(precision) * metersPerDegreeLon >= radiusMeters) {
+                return precision;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @return the geohash of the cell containing the point, followed by those of the cells
+     * around it
+     */
+    static Set<String> neighbourhood(double lat, double lon, int precision) {
+        double height = cellHeightDegrees(precision);
+        double width = cellWidthDegrees(precision);
+        Set<String> cells = new LinkedHashSet<>(9);
+        cells.add(encode(lat, lon, precision));
+        for (int dLat = -1; dLat <= 1; dLat++) {
+            // There is nothing beyond the poles, so those cells collapse onto the ones at the edge
+            double cellLat = Math.max(-90, Math.min(90, lat + dLat * height));
+            for (int dLon = -1; dLon <= 1; dLon++) {
+                cells.add(encode(cellLat, wrapLongitude(lon + dLon * width), precision));
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return the smallest string that sorts after every geohash starting with the prefix, for
+     * the end of a range scan
+     */
+    static String prefixEnd(String prefix) {
+        // Every geohash character sorts before '{'
+        return prefix + '{';
+    }
+
+    /**
+     * @return the great circle distance between the points in meters
+     */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private static double wrapLongitude(double lon) {
+        if (lon >= 180) {
+            return lon - 360;
+        } else if (lon < -180) {
+            return lon + 360;
+        }
+        return lon;
+    }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.io.IOException;
+
+/**
+ * The archive of past days, one {@link HistoryBlockCodec} block per location and month.
+ * Months are archived whole once they are over, so the weather table only ever holds the
+ * current month and the forecast, however long the history grows.
+ */
+final class HistoryArchive {
+    private static final String LOG_TAG = HistoryArchive.class.getSimpleName();
+
+    // The measurements kept for each day, besides the date and the condition
+    static final String[] VALUE_COLUMNS = CompactWeatherStorage.SCALED_COLUMNS;
+
+    // What archive reads from the weather table, in this order
+    static final String[] ARCHIVE_PROJECTION = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+    private static final int COL_LOC_KEY = 0;
+    private static final int COL_DATE = 1;
+    private static final int COL_WEATHER_ID = 2;
+    private static final int COL_SHORT_DESC = 3;
+    // Followed by VALUE_COLUMNS
+    private static final int COL_FIRST_VALUE = 4;
+
+    // The columns of the archived days, for queries that ask for all of them
+    static final String[] HISTORY_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // Where a column of an archived day comes from, when it isn't one of the VALUE_COLUMNS
+    private static final int SOURCE_DATE = -1;
+    private static final int SOURCE_WEATHER_ID = -2;
+    private static final int SOURCE_SHORT_DESC = -3;
+
+    private static final SQLiteQueryBuilder sHistoryByLocationSettingQueryBuilder;
+
+    static {
+        //history INNER JOIN location ON history.location_id = location._id
+        sHistoryByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
+        sHistoryByLocationSettingQueryBuilder.setTables(
+                HistoryEntry.TABLE_NAME + " INNER JOIN " +
+                        LocationEntry.TABLE_NAME +
+                        " ON " + HistoryEntry.TABLE_NAME +
+                        "." + HistoryEntry.COLUMN_LOC_KEY +
+                        " = " + LocationEntry.TABLE_NAME +
+                        "." + LocationEntry._ID);
+    }
+
+    //location.location_setting = ? AND start_date <= ? AND end_date >= ?
+    private static final String sLocationSettingWithRangeSelection =
+            LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
+                    HistoryEntry.COLUMN_START_DATE + " <= ? AND " +
+                    HistoryEntry.COLUMN_END_DATE + " >= ? ";
+
+    //location_id = ? AND start_date = ?
+    private static final String sMonthSelection =
+            HistoryEntry.COLUMN_LOC_KEY + " = ? AND " + HistoryEntry.COLUMN_START_DATE + " = ? ";
+
+    private HistoryArchive() {
+    }
+
+    /**
+     * @return the first day of the month the date is in, normalized like the weather dates
+     */
+    static long getMonthStart(long date) {
+        Time time = new Time();
+        time.set(date);
+        int julianDay = Time.getJulianDay(date, time.gmtoff);
+        return time.setJulianDay(julianDay - time.monthDay + 1);
+    }
+
+    /**
+     * Writes the days to the archive, merging them into the blocks already there.  Days the
+     * archive already has are replaced.
+     *
+     * @param days the days to archive, with the {@link #ARCHIVE_PROJECTION} columns, ordered by
+     *             location and then date
+     * @return the number of days archived
+     */
+    static int archive(SQLiteDatabase db, Cursor days) {
+        int archived = 0;
+        double[] values = new double[VALUE_COLUMNS.length];
+        boolean more = days.moveToFirst();
+        while (more) {
+            long locationId = days.getLong(COL_LOC_KEY);
+            long monthStart = getMonthStart(days.getLong(COL_DATE));
+            HistoryBlockCodec.Reader existing = getBlock(db, locationId, monthStart);
+            boolean hasExisting = existing != null && next(existing);
+
+            HistoryBlockCodec.Writer month = new HistoryBlockCodec.Writer(VALUE_COLUMNS.length);
+            long lastDate;
+            do {
+                long date = days.getLong(COL_DATE);
+                while (hasExisting && existing.getDate() < date) {
+                    hasExisting = copy(existing, month, values);
+                }
+                if (hasExisting && existing.getDate() == date) {
+                    hasExisting = next(existing);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = days.getDouble(COL_FIRST_VALUE + i);
+                }
+                month.add(date, days.getInt(COL_WEATHER_ID), days.getString(COL_SHORT_DESC),
+                        values);
+                lastDate = date;
+                archived++;
+                more = days.moveToNext();
+            } while (more && days.getLong(COL_LOC_KEY) == locationId
+                    && getMonthStart(days.getLong(COL_DATE)) == monthStart);
+            while (hasExisting) {
+                lastDate = existing.getDate();
+                hasExisting = copy(existing, month, values);
+            }
+
+            ContentValues block = new ContentValues();
+            block.put(HistoryEntry.COLUMN_LOC_KEY, locationId);
+            block.put(HistoryEntry.COLUMN_START_DATE, monthStart);
+            block.put(HistoryEntry.COLUMN_END_DATE, lastDate);
+            block.put(HistoryEntry.COLUMN_DAY_COUNT, month.getCount());
+            block.put(HistoryEntry.COLUMN_DATA, month.toByteArray());
+            db.insert(HistoryEntry.TABLE_NAME, null, block);
+        }
+        return archived;
+    }
+
+    /**
+     * @return the archived days of the location from the start date to the end date, decoded
+     * a block at a time into rows with the weather table's columns
+     */
+    static Cursor query(SQLiteDatabase db, String locationSetting, long startDate, long endDate,
+                        String[] projection) {
+        if (projection == null) {
+            projection = HISTORY_COLUMNS;
+        }
+        int[] sources = getSources(projection);
+        MatrixCursor history = new MatrixCursor(projection);
+
+        Cursor blocks = sHistoryByLocationSettingQueryBuilder.query(db,
+                new String[]{HistoryEntry.COLUMN_DATA},
+                sLocationSettingWithRangeSelection,
+                new String[]{locationSetting, Long.toString(endDate), Long.toString(startDate)},
+                null,
+                null,
+                HistoryEntry.COLUMN_START_DATE + " ASC"
+        );
+        try {
+            while (blocks.moveToNext()) {
+                HistoryBlockCodec.Reader reader = newReader(blocks.getBlob(0));
+                while (reader != null && next(reader)) {
+                    long date = reader.getDate();
+                    if (date > endDate) {
+                        break;
+                    }
+                    if (date >= startDate) {
+                        history.addRow(getRow(reader, sources));
+                    }
+                }
+            }
+        } finally {
+            blocks.close();
+        }
+        return history;
+    }
+
+    private static int[] getSources(String[] projection) {
+        int[] sources = new int[projection.length];
+        for (int i = 0; i < projection.length; i++) {
+            String column = projection[i];
+            if (WeatherEntry._ID.equals(column) || WeatherEntry.COLUMN_DATE.equals(column)) {
+                // Days are unique in a location's history, so the date doubles as the id
+                sources[i] = SOURCE_DATE;
+            } else if (WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+                sources[i] = SOURCE_WEATHER_ID;
+            } else if (WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                sources[i] = SOURCE_SHORT_DESC;
+            } else {
+                sources[i] = indexOf(VALUE_COLUMNS, column);
+                if (sources[i] == -1) {
+                    throw new IllegalArgumentException("Invalid column " + column);
+                }
+            }
+        }
+        return sources;
+    }
+
+    private static Object[] getRow(HistoryBlockCodec.Reader reader, int[] sources) {
+        Object[] row = new Object[sources.length];
+        for (int i = 0; i < sources.length; i++) {
+            switch (sources[i]) {
+                case SOURCE_DATE:
+                    row[i] = reader.getDate();
+                    break;
+                case SOURCE_WEATHER_ID:
+                    row[i] = reader.getWeatherId();
+                    break;
+                case SOURCE_SHORT_DESC:
+                    row[i] = reader.getDescription();
+                    break;
+                default:
+                    row[i] = reader.getValue(sources[i]);
+            }
+        }
+        return row;
+    }
+
+    private static int indexOf(String[] columns, String column) {
+        for (int i = 0; i < columns.length; i++) {
+            if (columns[i].equals(column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static HistoryBlockCodec.Reader getBlock(SQLiteDatabase db, long locationId,
+                                                     long monthStart) {
+        Cursor cursor = db.query(HistoryEntry.TABLE_NAME,
+                new String[]{HistoryEntry.COLUMN_DATA},
+                sMonthSelection,
+                new String[]{Long.toString(locationId), Long.toString(monthStart)},
+                null,
+                null,
+                null);
+        try {
+            return cursor.moveToFirst() ? newReader(cursor.getBlob(0)) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static HistoryBlockCodec.Reader newReader(byte[] block) {
+        try {
+            return new HistoryBlockCodec.Reader(block);
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Skipping unreadable history block", e);
+            return null;
+        }
+    }
+
+    /**
+     * Moves to the next day of a block, treating the rest of a corrupt block as missing rather
+     * than failing the whole read.
+     */
+    private static boolean next(HistoryBlockCodec.Reader reader) {
+        try {
+            return reader.next();
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Skipping the rest of an unreadable history block", e);
+            return false;
+        }
+    }
+
+    private static boolean copy(HistoryBlockCodec.Reader from, HistoryBlockCodec.Writer to,
+                                double[] values) {
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i < from.getValueCount() ? from.getValue(i) : 0;
+        }
+        to.add(from.getDate(), from.getWeatherId(), from.getDescription(), values);
+        return next(from);
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Binary encoding of a block of archived days, in the style of the Gorilla time series
+ * compression.  Each column is a separate bit stream:
+ * <ul>
+ * <li>Dates are stored as the change in the difference between consecutive dates, which is
+ * a single 0 bit for consecutive days.</li>
+ * <li>The condition code and the measurements are stored in tenths, zig-zag encoded so that
+ * small negative numbers have leading zeros too, and XORed with the previous day's value.  An
+ * unchanged value is a single 0 bit, and otherwise only the bits between the leading and
+ * trailing zeros of the XOR are stored.</li>
+ * </ul>
+ * Descriptions are stored once per condition code in the header.  Layout, big endian:
+ * <pre>
+ *   byte    version
+ *   short   number of days
+ *   byte    number of measurements per day
+ *   short   number of descriptions
+ *   per description:
+ *     short condition code
+ *     UTF   description
+ *   per column, dates first, then condition codes, then the measurements:
+ *     short length in bytes
+ *     bytes bit stream
+ * </pre>
+ */
+final class HistoryBlockCodec {
+    static final int VERSION = 1;
+
+    private static final int MAX_DAYS = 0xffff;
+
+    // Measurements are kept to a tenth, as in the compact weather table
+    private static final int SCALE = CompactWeatherStorage.SCALE;
+
+    // Dates are a day apart unless the data has gaps, so that's what the first one is compared to
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Sizes of the delta-of-delta buckets, after the 0 bit for no change.  In milliseconds
+    // rather than Gorilla's seconds, so the first holds daylight saving changes and the second
+    // gaps of weeks.
+    private static final int SMALL_DATE_BITS = 24;
+    private static final int LARGE_DATE_BITS = 40;
+
+    private HistoryBlockCodec() {
+    }
+
+    /**
+     * Builds a block from days added in increasing date order.
+     */
+    static final class Writer {
+        private final int mValueCount;
+        private final DateEncoder mDates = new DateEncoder();
+        private final XorEncoder mWeatherIds = new XorEncoder();
+        private final XorEncoder[] mValues;
+        private final Map<Integer, String> mDescriptions = new LinkedHashMap<>();
+        private int mCount;
+        private long mLastDate;
+
+        Writer(int valueCount) {
+            mValueCount = valueCount;
+            mValues = new XorEncoder[valueCount];
+            for (int i = 0; i < valueCount; i++) {
+                mValues[i] = new XorEncoder();
+            }
+        }
+
+        void add(long date, int weatherId, String description, double[] values) {
+            if (mCount > 0 && date <= mLastDate) {
+                throw new IllegalArgumentException("Days out of order: " + date);
+            }
+            if (mCount == MAX_DAYS) {
+                throw new IllegalArgumentException("Too many days");
+            }
+            mDates.write(date);
+            mWeatherIds.write(weatherId);
+            for (int i = 0; i < mValueCount; i++) {
+                mValues[i].write(Math.round(values[i] * SCALE));
+            }
+            if (description != null) {
+                mDescriptions.put(weatherId, description);
+            }
+            mLastDate = date;
+            mCount++;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        byte[] toByteArray() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            try {
+                out.writeByte(VERSION);
+                out.writeShort(mCount);
+                out.writeByte(mValueCount);
+                out.writeShort(mDescriptions.size());
+                for (Map.Entry<Integer, String> description : mDescriptions.entrySet()) {
+                    out.writeShort(description.getKey());
+                    out.writeUTF(description.getValue());
+                }
+                writeColumn(out, mDates.mOut);
+                writeColumn(out, mWeatherIds.mOut);
+                for (XorEncoder values : mValues) {
+                    writeColumn(out, values.mOut);
+                }
+            } catch (IOException e) {
+                // Writing to memory doesn't fail
+                throw new IllegalStateException(e);
+            }
+            return bytes.toByteArray();
+        }
+
+        private static void writeColumn(DataOutputStream out, BitWriter column)
+                throws IOException {
+            out.writeShort(column.mLength);
+            out.write(column.mBuffer, 0, column.mLength);
+        }
+    }
+
+    /**
+     * Reads the days of a block one at a time, without decoding the whole block up front.
+     */
+    static final class Reader {
+        private final int mCount;
+        private final DateDecoder mDates;
+        private final XorDecoder mWeatherIds;
+        private final XorDecoder[] mValues;
+        private final Map<Integer, String> mDescriptions;
+        private int mPosition = -1;
+
+        /**
+         * @throws IOException if the block is truncated or of an unknown version
+         */
+        Reader(byte[] block) throws IOException {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(block));
+            try {
+                int version = in.readUnsignedByte();
+                if (version != VERSION) {
+                    throw new IOException("Unsupported history block version " + version);
+                }
+                mCount = in.readUnsignedShort();
+                int valueCount = in.readUnsignedByte();
+                int descriptionCount = in.readUnsignedShort();
+                mDescriptions = new LinkedHashMap<>(descriptionCount);
+                for (int i = 0; i < descriptionCount; i++) {
+                    int weatherId = in.readUnsignedShort();
+                    mDescriptions.put(weatherId, in.readUTF());
+                }
+                int offset = block.length - in.available();
+                mDates = new DateDecoder(readColumn(block, offset));
+                offset = mDates.mIn.mEnd;
+                mWeatherIds = new XorDecoder(readColumn(block, offset));
+                offset = mWeatherIds.mIn.mEnd;
+                mValues = new XorDecoder[valueCount];
+                for (int i = 0; i < valueCount; i++) {
+                    mValues[i] = new XorDecoder(readColumn(block, offset));
+                    offset = mValues[i].mIn.mEnd;
+                }
+            } catch (EOFException e) {
+                throw new IOException("Truncated history block", e);
+            }
+        }
+
+        private static BitReader readColumn(byte[] block, int offset) throws IOException {
+            if (offset + 2 > block.length) {
+                throw new IOException("Truncated history block");
+            }
+            int length = ((block[offset] & 0xff) << 8) | (block[offset + 1] & 0xff);
+            if (offset + 2 + length > block.length) {
+                throw new IOException("Truncated history block");
+            }
+            return new BitReader(block, offset + 2, offset + 2 + length);
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        int getValueCount() {
+            return mValues.length;
+        }
+
+        /**
+         * Moves to the next day.
+         *
+         * @return false once there are no more days
+         * @throws IOException if the block is corrupt
+         */
+        boolean next() throws IOException {
+            if (mPosition + 1 >= mCount) {
+                mPosition = mCount;
+                return false;
+            }
+            mPosition++;
+            mDates.read();
+            mWeatherIds.read();
+            for (XorDecoder values : mValues) {
+                values.read();
+            }
+            return true;
+        }
+
+        long getDate() {
+            return mDates.mPrevious;
+        }
+
+        int getWeatherId() {
+            return (int) mWeatherIds.mPrevious;
+        }
+
+        String getDescription() {
+            String description = mDescriptions.get(getWeatherId());
+            return description != null ? description : "";
+        }
+
+        double getValue(int column) {
+            return mValues[column].mPrevious / (double) SCALE;
+        }
+    }
+
+    private static final class DateEncoder {
+        final BitWriter mOut = new BitWriter();
+        private long mPrevious;
+        private long mPreviousDelta = DAY_IN_MILLIS;
+        private boolean mFirst = true;
+
+        void write(long date) {
+            if (mFirst) {
+                mOut.writeBits(date, 64);
+                mFirst = false;
+            } else {
+                long delta = date - mPrevious;
+                long deltaOfDelta = zigZag(delta - mPreviousDelta);
+                if (deltaOfDelta == 0) {
+                    mOut.writeBits(0, 1);
+                } else if (deltaOfDelta >>> SMALL_DATE_BITS == 0) {
+                    mOut.writeBits(0x2, 2);
+                    mOut.writeBits(deltaOfDelta, SMALL_DATE_BITS);
+                } else if (deltaOfDelta >>> LARGE_DATE_BITS == 0) {
+                    mOut.writeBits(0x6, 3);
+                    mOut.writeBits(deltaOfDelta, LARGE_DATE_BITS);
+                } else {
+                    mOut.writeBits(0x7, 3);
+                    mOut.writeBits(deltaOfDelta, 64);
+                }
+                mPreviousDelta = delta;
+            }
+            mPrevious = date;
+        }
+    }
+
+    private static final class DateDecoder {
+        final BitReader mIn;
+        long mPrevious;
+        private long mPreviousDelta = DAY_IN_MILLIS;
+        private boolean mFirst = true;
+
+        DateDecoder(BitReader in) {
+            mIn = in;
+        }
+
+        void read() throws IOException {
+            if (mFirst) {
+                mPrevious = mIn.readBits(64);
+                mFirst = false;
+                return;
+            }
+            long deltaOfDelta;
+            if (mIn.readBits(1) == 0) {
+                deltaOfDelta = 0;
+            } else if (mIn.readBits(1) == 0) {
+                deltaOfDelta = unZigZag(mIn.readBits(SMALL_DATE_BITS));
+            } else if (mIn.readBits(1) == 0) {
+                deltaOfDelta = unZigZag(mIn.readBits(LARGE_DATE_BITS));
+            } else {
+                deltaOfDelta = unZigZag(mIn.readBits(64));
+            }
+            mPreviousDelta += deltaOfDelta;
+            mPrevious += mPreviousDelta;
+        }
+    }
+
+    private static final class XorEncoder {
+        final BitWriter mOut = new BitWriter();
+        private long mPrevious;
+        private int mPreviousLeading = -1;
+        private int mPreviousTrailing;
+
+        void write(long value) {
+            long encoded = zigZag(value);
+            long xor = encoded ^ mPrevious;
+            mPrevious = encoded;
+            if (xor == 0) {
+                mOut.writeBits(0, 1);
+                return;
+            }
+            int leading = Long.numberOfLeadingZeros(xor);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (mPreviousLeading >= 0 && leading >= mPreviousLeading
+                    && trailing >= mPreviousTrailing) {
+                // The changed bits fit in the previous window
+                mOut.writeBits(0x2, 2);
+                mOut.writeBits(xor >>> mPreviousTrailing,
+                        64 - mPreviousLeading - mPreviousTrailing);
+            } else {
+                int length = 64 - leading - trailing;
+                mOut.writeBits(0x3, 2);
+                mOut.writeBits(leading, 6);
+                mOut.writeBits(length - 1, 6);
+                mOut.writeBits(xor >>> trailing, length);
+                mPreviousLeading = leading;
+                mPreviousTrailing = trailing;
+            }
+        }
+    }
+
+    private static final class XorDecoder {
+        final BitReader mIn;
+        long mPrevious;
+        private long mEncoded;
+        private int mPreviousLeading;
+        private int mPreviousTrailing;
+
+        XorDecoder(BitReader in) {
+            mIn = in;
+        }
+
+        void read() throws IOException {
+            if (mIn.readBits(1) != 0) {
+                if (mIn.readBits(1) != 0) {
+                    mPreviousLeading = (int) mIn.readBits(6);
+                    int length = (int) mIn.readBits(6) + 1;
+                    mPreviousTrailing = 64 - mPreviousLeading - length;
+                    if (mPreviousTrailing < 0) {
+                        throw new IOException("Corrupt history block");
+                    }
+                }
+                int length = 64 - mPreviousLeading - mPreviousTrailing;
+                mEncoded ^= mIn.readBits(length) << mPreviousTrailing;
+            }
+            mPrevious = unZigZag(mEncoded);
+        }
+    }
+
+    private static final class BitWriter {
+        byte[] mBuffer = new byte[64];
+        int mLength;
+        // Bits already used in the last byte, 0 when it's full
+        private int mBitPosition;
+
+        /**
+         * Appends the low bits of the value, most significant first.
+         */
+        void writeBits(long value, int bits) {
+            while (bits > 0) {
+                if (mBitPosition == 0) {
+                    if (mLength == mBuffer.length) {
+                        mBuffer = Arrays.copyOf(mBuffer, mLength * 2);
+                    }
+                    mLength++;
+                }
+                int free = 8 - mBitPosition;
+                int n = Math.min(free, bits);
+                int chunk = (int) (value >>> (bits - n)) & ((1 << n) - 1);
+                mBuffer[mLength - 1] |= chunk << (free - n);
+                bits -= n;
+                mBitPosition = (mBitPosition + n) & 7;
+            }
+        }
+    }
+
+    private static final class BitReader {
+        private final byte[] mBuffer;
+        private int mPosition;
+        private int mBitPosition;
+        final int mEnd;
+
+        BitReader(byte[] buffer, int start, int end) {
+            mBuffer = buffer;
+            mPosition = start;
+            mEnd = end;
+        }
+
+        long readBits(int bits) throws IOException {
+            long value = 0;
+            while (bits > 0) {
+                if (mPosition >= mEnd) {
+                    throw new IOException("Truncated history block");
+                }
+                int available = 8 - mBitPosition;
+                int n = Math.min(available, bits);
+                int chunk = (mBuffer[mPosition] >>> (available - n)) & ((1 << n) - 1);
+                value = (value << n) | chunk;
+                bits -= n;
+                mBitPosition += n;
+                if (mBitPosition == 8) {
+                    mBitPosition = 0;
+                    mPosition++;
+                }
+            }
+            return value;
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -43,6 +43,14 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_NEAR = "near";
+    public static final String PATH_CITY_SEARCH = "city_search";
+    public static final String PATH_HISTORY = "history";
+    public static final String PATH_CLIMATE = "climate";
+
+    // Query parameter for weather reads that should also ask for the forecast to be fetched
+    // again, in the background, if it has expired.  The read itself still returns what is stored.
+    public static final String PARAM_REVALIDATE = "revalidate";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -54,6 +62,18 @@ public class WeatherContract {
         return time.setJulianDay(julianDay);
     }
 
+    /**
+     * Adds {@link #PARAM_REVALIDATE} to a weather uri, so that reading it serves the stored rows
+     * straight away but refreshes them afterwards if they are past their expiry.
+     */
+    public static Uri buildRevalidatingUri(Uri uri) {
+        return uri.buildUpon().appendQueryParameter(PARAM_REVALIDATE, "1").build();
+    }
+
+    public static boolean isRevalidating(Uri uri) {
+        return uri.getQueryParameter(PARAM_REVALIDATE) != null;
+    }
+
     /* Inner class that defines the table contents of the location table */
     public static final class LocationEntry implements BaseColumns {
 
@@ -81,9 +101,282 @@ public class WeatherContract {
         public static final String COLUMN_COORD_LAT = "coord_lat";
         public static final String COLUMN_COORD_LONG = "coord_long";
 
+        // When the forecast for this location was last fetched, and when it is due to be fetched
+        // again, both stored as long in milliseconds since the epoch.  Both are 0 until the
+        // first fetch.
+        public static final String COLUMN_FETCHED_AT = "fetched_at";
+        public static final String COLUMN_EXPIRES_AT = "expires_at";
+
+        // Geohash of the coordinates, filled in by the provider, so that nearby locations can be
+        // found with a range scan on its index
+        public static final String COLUMN_GEOHASH = "geohash";
+
+        // Distance in meters from the point searched around, only in results of
+        // buildLocationsNearUri
+        public static final String COLUMN_DISTANCE = "distance";
+
+        // Query parameters of buildLocationsNearUri
+        public static final String PARAM_LAT = "lat";
+        public static final String PARAM_LON = "lon";
+        public static final String PARAM_RADIUS = "radius";
+
         public static Uri buildLocationUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
+
+        /**
+         * Builds a uri for the stored locations within the radius of a point, nearest first.
+         *
+         * @param radiusMeters how far to look, which should be well under the size of a
+         *                     continent
+         */
+        public static Uri buildLocationsNearUri(double lat, double lon, double radiusMeters) {
+            return CONTENT_URI.buildUpon().appendPath(PATH_NEAR)
+                    .appendQueryParameter(PARAM_LAT, Double.toString(lat))
+                    .appendQueryParameter(PARAM_LON, Double.toString(lon))
+                    .appendQueryParameter(PARAM_RADIUS, Double.toString(radiusMeters)).build();
+        }
+
+        public static double getLatitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LAT));
+        }
+
+        public static double getLongitudeFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_LON));
+        }
+
+        public static double getRadiusFromUri(Uri uri) {
+            return Double.parseDouble(uri.getQueryParameter(PARAM_RADIUS));
+        }
+    }
+
+    /*
+        Inner class that defines the full-text index of city names that location suggestions
+        come from.  It holds the bundled cities plus every stored location, and is only read
+        through buildSearchUri.
+     */
+    public static final class CitySearchEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CITY_SEARCH).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CITY_SEARCH;
+
+        public static final String TABLE_NAME = "city_search";
+
+        public static final String COLUMN_CITY_NAME = "city_name";
+
+        // Two letter country code of a bundled city, or empty for a stored location
+        public static final String COLUMN_COUNTRY = "country";
+
+        // What to store as the location setting when the suggestion is picked
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        /**
+         * Builds a uri for the suggestions for what the user has typed so far, where every word
+         * matches the start of a word in the city name or location setting.
+         */
+        public static Uri buildSearchUri(String typed) {
+            return CONTENT_URI.buildUpon().appendPath(typed).build();
+        }
+
+        public static String getTypedFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+    }
+
+    /*
+        Inner class that defines the archive of past days.  Once a month is over, its days move
+        out of the weather table into one compressed block per location, which is read back a
+        day per row, with the weather table's columns, through buildHistoryLocationWithRange.
+     */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        public static final String TABLE_NAME = "history";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        // The first day of the month the block holds, stored as long in milliseconds
+        public static final String COLUMN_START_DATE = "start_date";
+        // The last day in the block, stored as long in milliseconds
+        public static final String COLUMN_END_DATE = "end_date";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+        // The days, encoded by HistoryBlockCodec
+        public static final String COLUMN_DATA = "data";
+
+        public static final String PARAM_START = "start";
+        public static final String PARAM_END = "end";
+        public static final String PARAM_BEFORE = "before";
+
+        /**
+         * Builds a uri that, when updated, archives every month that ended before the date.
+         */
+        public static Uri buildArchiveUri(long beforeDate) {
+            return CONTENT_URI.buildUpon()
+                    .appendQueryParameter(PARAM_BEFORE, Long.toString(beforeDate)).build();
+        }
+
+        /**
+         * Builds a uri for the archived days of a location from the start date to the end date,
+         * both included.
+         */
+        public static Uri buildHistoryLocationWithRange(
+                String locationSetting, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting)
+                    .appendQueryParameter(PARAM_START, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            return getDateParameter(uri, PARAM_START, 0);
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            return getDateParameter(uri, PARAM_END, Long.MAX_VALUE);
+        }
+
+        public static long getBeforeDateFromUri(Uri uri) {
+            return getDateParameter(uri, PARAM_BEFORE, System.currentTimeMillis());
+        }
+
+        private static long getDateParameter(Uri uri, String name, long defaultDate) {
+            String dateString = uri.getQueryParameter(name);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return defaultDate;
+        }
+    }
+
+    /*
+        Inner class that defines the climate statistics.  Each day is added to rollups by week,
+        month, year and calendar day once it is over, so statistics over any range are read
+        from one row per bucket rather than from the days themselves.  Read them a bucket per
+        row through buildClimateUri; the stored columns are internal.
+     */
+    public static final class ClimateEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_CLIMATE).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_CLIMATE;
+
+        public static final String TABLE_NAME = "climate";
+
+        // The ways days are grouped into buckets
+        public static final String PERIOD_WEEK = "week";
+        public static final String PERIOD_MONTH = "month";
+        public static final String PERIOD_YEAR = "year";
+        // The same date in every year, for what's normal on a date
+        public static final String PERIOD_CALENDAR_DAY = "calendar_day";
+        // Every day there is, for the records
+        public static final String PERIOD_ALL = "all";
+
+        // Column with the foreign key into the location table.
+        public static final String COLUMN_LOC_KEY = "location_id";
+        public static final String COLUMN_PERIOD = "period";
+        // The first day of the bucket, stored as long in milliseconds.  For calendar days it's
+        // the month and day as MMDD, and for all days it's 0.
+        public static final String COLUMN_BUCKET = "bucket";
+        // The first and last day added to the bucket, stored as long in milliseconds
+        public static final String COLUMN_FIRST_DATE = "first_date";
+        public static final String COLUMN_LAST_DATE = "last_date";
+        public static final String COLUMN_DAY_COUNT = "day_count";
+
+        // Stored sums and histograms of the daily highs and lows
+        public static final String COLUMN_HIGH_SUM = "high_sum";
+        public static final String COLUMN_HIGH_HISTOGRAM = "high_histogram";
+        public static final String COLUMN_LOW_SUM = "low_sum";
+        public static final String COLUMN_LOW_HISTOGRAM = "low_histogram";
+
+        // The lowest, highest and mean daily highs and lows in the bucket
+        public static final String COLUMN_HIGH_MIN = "high_min";
+        public static final String COLUMN_HIGH_MAX = "high_max";
+        public static final String COLUMN_HIGH_MEAN = "high_mean";
+        public static final String COLUMN_LOW_MIN = "low_min";
+        public static final String COLUMN_LOW_MAX = "low_max";
+        public static final String COLUMN_LOW_MEAN = "low_mean";
+
+        // The PARAM_PERCENTILE percentile of the daily highs and lows, to the degree
+        public static final String COLUMN_HIGH_PERCENTILE = "high_percentile";
+        public static final String COLUMN_LOW_PERCENTILE = "low_percentile";
+
+        // How far the mean is from what's normal for the same dates, or null if there is
+        // nothing to compare with
+        public static final String COLUMN_HIGH_ANOMALY = "high_anomaly";
+        public static final String COLUMN_LOW_ANOMALY = "low_anomaly";
+
+        public static final String PARAM_START = "start";
+        public static final String PARAM_END = "end";
+        public static final String PARAM_PERCENTILE = "percentile";
+
+        private static final int DEFAULT_PERCENTILE = 50;
+
+        /**
+         * Builds a uri for the buckets of a location whose period contains a date from the start
+         * date to the end date, so the ends of the range round out to whole buckets.
+         */
+        public static Uri buildClimateUri(
+                String locationSetting, String period, long startDate, long endDate) {
+            return CONTENT_URI.buildUpon().appendPath(locationSetting).appendPath(period)
+                    .appendQueryParameter(PARAM_START, Long.toString(normalizeDate(startDate)))
+                    .appendQueryParameter(PARAM_END, Long.toString(normalizeDate(endDate)))
+                    .build();
+        }
+
+        /**
+         * Adds the percentile that COLUMN_HIGH_PERCENTILE and COLUMN_LOW_PERCENTILE are, from 0
+         * to 100, to a climate uri.  It's the median otherwise.
+         */
+        public static Uri buildPercentileUri(Uri uri, int percentile) {
+            return uri.buildUpon()
+                    .appendQueryParameter(PARAM_PERCENTILE, Integer.toString(percentile)).build();
+        }
+
+        public static String getLocationSettingFromUri(Uri uri) {
+            return uri.getPathSegments().get(1);
+        }
+
+        public static String getPeriodFromUri(Uri uri) {
+            return uri.getPathSegments().get(2);
+        }
+
+        public static long getStartDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_START);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return 0;
+        }
+
+        public static long getEndDateFromUri(Uri uri) {
+            String dateString = uri.getQueryParameter(PARAM_END);
+            if (null != dateString && dateString.length() > 0)
+                return Long.parseLong(dateString);
+            else
+                return normalizeDate(System.currentTimeMillis());
+        }
+
+        public static int getPercentileFromUri(Uri uri) {
+            String percentileString = uri.getQueryParameter(PARAM_PERCENTILE);
+            if (null != percentileString && percentileString.length() > 0)
+                return Integer.parseInt(percentileString);
+            else
+                return DEFAULT_PERCENTILE;
+        }
     }
 
     /* Inner class that defines the table contents of the weather table */
@@ -126,6 +419,12 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // With the compact_weather_storage layout the temperatures, humidity, pressure, wind
+        // speed and degrees are stored as integer tenths.  Queries still read them back in their
+        // units, and sorting on them is unaffected, but a selection that compares one of them
+        // with a value sees the stored tenths: ask for "max > 250" to get "max > 25".
+        // CompactWeatherStorage.SCALE is the factor.
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
@@ -18,26 +18,91 @@ package com.example.android.sunshine.app.data;
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.data.WeatherContract.CitySearchEntry;
+import com.example.android.sunshine.app.data.WeatherContract.ClimateEntry;
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
 /**
  * Manages a local database for weather data.
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
+    private static final String LOG_TAG = WeatherDbHelper.class.getSimpleName();
 
     // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    private static final int DATABASE_VERSION = 8;
+    // The versions that added the tables holding data that can't be fetched again
+    private static final int HISTORY_VERSION = 7;
+    private static final int CLIMATE_VERSION = 8;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Keep the city search in step with the stored locations
+    private static final String LOCATION_INSERT_TRIGGER =
+            LocationEntry.TABLE_NAME + "_insert_" + CitySearchEntry.TABLE_NAME;
+    private static final String LOCATION_DELETE_TRIGGER =
+            LocationEntry.TABLE_NAME + "_delete_" + CitySearchEntry.TABLE_NAME;
+
+    private final Context mContext;
+    // Whether to create the database with the compact weather layout
+    private final boolean mCompactStorage;
+    // Whether the open database has it, which is what counts if it was created earlier
+    private volatile boolean mOpenedCompact;
+
     public WeatherDbHelper(Context context) {
-        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this(context, false);
+    }
+
+    /**
+     * @param compactStorage whether a new database should use the compact weather layout of
+     *                       {@link CompactWeatherStorage}
+     */
+    public WeatherDbHelper(Context context, boolean compactStorage) {
+        this(context, DATABASE_NAME, compactStorage);
+    }
+
+    WeatherDbHelper(Context context, String name, boolean compactStorage) {
+        super(context, name, null, DATABASE_VERSION);
+        mContext = context;
+        mCompactStorage = compactStorage;
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        mOpenedCompact = CompactWeatherStorage.isCompact(db);
+    }
+
+    /**
+     * @return whether the database has the compact weather layout, opening it if needed
+     */
+    boolean isCompactStorage() {
+        getReadableDatabase();
+        return mOpenedCompact;
     }
 
     @Override
     public void onCreate(SQLiteDatabase sqLiteDatabase) {
+        createLocationTable(sqLiteDatabase);
+        createWeatherTable(sqLiteDatabase);
+        createHistoryTable(sqLiteDatabase);
+        createClimateTable(sqLiteDatabase);
+        createCitySearch(sqLiteDatabase);
+    }
+
+    /**
+     * Creates the locations, which the weather, history and climate rows all refer to.
+     */
+    private void createLocationTable(SQLiteDatabase sqLiteDatabase) {
         // Create a table to hold locations.  A location consists of the string supplied in the
         // location setting, the city name, and the latitude and longitude
         final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
@@ -45,9 +110,25 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
                 LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
                 LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL, " +
+                LocationEntry.COLUMN_FETCHED_AT + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_EXPIRES_AT + " INTEGER NOT NULL DEFAULT 0, " +
+                LocationEntry.COLUMN_GEOHASH + " TEXT " +
                 " );";
 
+        // Searches for nearby locations scan ranges of geohashes
+        final String SQL_CREATE_LOCATION_GEOHASH_INDEX = "CREATE INDEX " +
+                LocationEntry.TABLE_NAME + "_" + LocationEntry.COLUMN_GEOHASH + " ON " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry.COLUMN_GEOHASH + ");";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_GEOHASH_INDEX);
+    }
+
+    /**
+     * Creates the weather table, in the compact layout if this helper was asked for it.
+     */
+    private void createWeatherTable(SQLiteDatabase sqLiteDatabase) {
         final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
                 // Why AutoIncrement here, and not above?
                 // Unique keys will be auto-generated in either case.  But for weather
@@ -59,16 +140,18 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 // the ID of the location entry associated with this weather data
                 WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
                 WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+                // The compact layout keeps descriptions in a dictionary instead
+                (mCompactStorage ? "" : WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, ") +
                 WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
 
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                (mCompactStorage ? CompactWeatherStorage.getCreateWeatherTableColumns() :
+                        WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                        WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
 
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+                        WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+                        WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+                        WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+                        WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, ") +
 
                 // Set up the location column as a foreign key to location table.
                 " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
@@ -79,20 +162,181 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
                 " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
                 WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
 
-        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        if (mCompactStorage) {
+            CompactWeatherStorage.createConditionTable(sqLiteDatabase);
+        }
+    }
+
+    /**
+     * Creates the archive of past months.
+     */
+    private void createHistoryTable(SQLiteDatabase sqLiteDatabase) {
+        // Past months of weather, in one block per location and month
+        final String SQL_CREATE_HISTORY_TABLE = "CREATE TABLE " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry._ID + " INTEGER PRIMARY KEY," +
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_START_DATE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_END_DATE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DATA + " BLOB NOT NULL, " +
+
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // Archiving late days of a month replaces its block with a merged one
+                " UNIQUE (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+                HistoryEntry.COLUMN_START_DATE + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_HISTORY_TABLE);
+    }
+
+    /**
+     * Creates the climate rollups.
+     */
+    private void createClimateTable(SQLiteDatabase sqLiteDatabase) {
+        // Statistics of the days that are over, in one row per location and bucket
+        final String SQL_CREATE_CLIMATE_TABLE = "CREATE TABLE " + ClimateEntry.TABLE_NAME + " (" +
+                ClimateEntry._ID + " INTEGER PRIMARY KEY," +
+                ClimateEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                ClimateEntry.COLUMN_PERIOD + " TEXT NOT NULL, " +
+                ClimateEntry.COLUMN_BUCKET + " INTEGER NOT NULL, " +
+                ClimateEntry.COLUMN_FIRST_DATE + " INTEGER NOT NULL, " +
+                ClimateEntry.COLUMN_LAST_DATE + " INTEGER NOT NULL, " +
+                ClimateEntry.COLUMN_DAY_COUNT + " INTEGER NOT NULL, " +
+
+                ClimateEntry.COLUMN_HIGH_SUM + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_HIGH_MIN + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_HIGH_MAX + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_HIGH_HISTOGRAM + " BLOB NOT NULL, " +
+                ClimateEntry.COLUMN_LOW_SUM + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_LOW_MIN + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_LOW_MAX + " REAL NOT NULL, " +
+                ClimateEntry.COLUMN_LOW_HISTOGRAM + " BLOB NOT NULL, " +
+
+                " FOREIGN KEY (" + ClimateEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+                // Adding days to a bucket replaces its row
+                " UNIQUE (" + ClimateEntry.COLUMN_LOC_KEY + ", " +
+                ClimateEntry.COLUMN_PERIOD + ", " +
+                ClimateEntry.COLUMN_BUCKET + ") ON CONFLICT REPLACE);";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_CLIMATE_TABLE);
+    }
+
+    /**
+     * Creates the full-text index for location suggestions, fills it with the bundled cities,
+     * and keeps it in step with the location table from then on.
+     */
+    private void createCitySearch(SQLiteDatabase sqLiteDatabase) {
+        // FTS3 rather than FTS4, which older devices don't have
+        final String SQL_CREATE_CITY_SEARCH_TABLE = "CREATE VIRTUAL TABLE " +
+                CitySearchEntry.TABLE_NAME + " USING fts3 (" +
+                CitySearchEntry.COLUMN_CITY_NAME + ", " +
+                CitySearchEntry.COLUMN_COUNTRY + ", " +
+                CitySearchEntry.COLUMN_LOCATION_SETTING + ");";
+
+        // Stored locations are the ones without a country
+        final String SQL_CREATE_LOCATION_INSERT_TRIGGER = "CREATE TRIGGER " +
+                LOCATION_INSERT_TRIGGER +
+                " AFTER INSERT ON " + LocationEntry.TABLE_NAME + " BEGIN " +
+                "INSERT INTO " + CitySearchEntry.TABLE_NAME + " (" +
+                CitySearchEntry.COLUMN_CITY_NAME + ", " +
+                CitySearchEntry.COLUMN_COUNTRY + ", " +
+                CitySearchEntry.COLUMN_LOCATION_SETTING + ") VALUES (new." +
+                LocationEntry.COLUMN_CITY_NAME + ", '', new." +
+                LocationEntry.COLUMN_LOCATION_SETTING + "); END;";
+
+        final String SQL_CREATE_LOCATION_DELETE_TRIGGER = "CREATE TRIGGER " +
+                LOCATION_DELETE_TRIGGER +
+                " AFTER DELETE ON " + LocationEntry.TABLE_NAME + " BEGIN " +
+                "DELETE FROM " + CitySearchEntry.TABLE_NAME + " WHERE " +
+                CitySearchEntry.COLUMN_COUNTRY + " = '' AND " +
+                CitySearchEntry.COLUMN_LOCATION_SETTING + " = old." +
+                LocationEntry.COLUMN_LOCATION_SETTING + "; END;";
+
+        sqLiteDatabase.execSQL(SQL_CREATE_CITY_SEARCH_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_INSERT_TRIGGER);
+        sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_DELETE_TRIGGER);
+
+        SQLiteStatement insert = sqLiteDatabase.compileStatement("INSERT INTO " +
+                CitySearchEntry.TABLE_NAME + " (" +
+                CitySearchEntry.COLUMN_CITY_NAME + ", " +
+                CitySearchEntry.COLUMN_COUNTRY + ", " +
+                CitySearchEntry.COLUMN_LOCATION_SETTING + ") VALUES (?, ?, ?)");
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    mContext.getResources().openRawResource(R.raw.cities), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.lastIndexOf(',');
+                if (line.startsWith("#") || comma == -1) {
+                    continue;
+                }
+                insert.bindString(1, line.substring(0, comma));
+                insert.bindString(2, line.substring(comma + 1));
+                insert.bindString(3, line);
+                insert.executeInsert();
+            }
+        } catch (IOException e) {
+            // Suggestions will just be limited to the stored locations
+            Log.e(LOG_TAG, "Error reading the bundled cities", e);
+        } finally {
+            insert.close();
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (final IOException e) {
+                    Log.e(LOG_TAG, "Error closing stream", e);
+                }
+            }
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+        if (oldVersion < HISTORY_VERSION) {
+            // Until then the database was only a cache for online data, so its upgrade policy
+            // was to simply discard the data and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CitySearchEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CompactWeatherStorage.CONDITION_TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + ClimateEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+
+        // The history and the climate rollups can't be fetched again, so they are migrated in
+        // place, along with the locations their rows refer to by id.  Each schema change to
+        // them gets a step here, guarded by the version it arrived in.
+        if (oldVersion < CLIMATE_VERSION) {
+            createClimateTable(sqLiteDatabase);
+        }
+
+        // The rest is still a cache, so it is discarded and rebuilt, with the stored locations
+        // added back to the city search
         sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CompactWeatherStorage.CONDITION_TABLE_NAME);
+        sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS " + LOCATION_INSERT_TRIGGER);
+        sqLiteDatabase.execSQL("DROP TRIGGER IF EXISTS " + LOCATION_DELETE_TRIGGER);
+        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + CitySearchEntry.TABLE_NAME);
+        createWeatherTable(sqLiteDatabase);
+        createCitySearch(sqLiteDatabase);
+        sqLiteDatabase.execSQL("INSERT INTO " + CitySearchEntry.TABLE_NAME + " (" +
+                CitySearchEntry.COLUMN_CITY_NAME + ", " +
+                CitySearchEntry.COLUMN_COUNTRY + ", " +
+                CitySearchEntry.COLUMN_LOCATION_SETTING + ") SELECT " +
+                LocationEntry.COLUMN_CITY_NAME + ", '', " +
+                LocationEntry.COLUMN_LOCATION_SETTING + " FROM " + LocationEntry.TABLE_NAME);
+        // With their weather gone, the locations need fetching again
+        sqLiteDatabase.execSQL("UPDATE " + LocationEntry.TABLE_NAME + " SET " +
+                LocationEntry.COLUMN_FETCHED_AT + " = 0, " +
+                LocationEntry.COLUMN_EXPIRES_AT + " = 0");
     }
 }
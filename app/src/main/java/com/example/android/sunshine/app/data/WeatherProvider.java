@@ -17,25 +17,58 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.util.Log;
+
+import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class WeatherProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherProvider.class.getSimpleName();
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
 
+    // How long to wait before asking again to refresh a location whose refresh hasn't landed
+    private static final long REVALIDATE_RETRY_MILLIS = 15 * 60 * 1000;
+    // When a refresh was last asked for, by location setting
+    private final Map<String, Long> mRevalidationTimes = new HashMap<>();
+
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int LOCATION_NEAR = 301;
+    static final int CITY_SEARCH = 400;
+    static final int HISTORY = 500;
+    static final int HISTORY_WITH_LOCATION = 501;
+    static final int CLIMATE = 600;
+    static final int CLIMATE_WITH_LOCATION_AND_PERIOD = 601;
+
+    // How many location suggestions to return at most
+    private static final String CITY_SEARCH_LIMIT = "10";
 
     private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    private static final SQLiteQueryBuilder sCitySearchQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -49,8 +82,38 @@ public class WeatherProvider extends ContentProvider {
                         "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY +
                         " = " + WeatherContract.LocationEntry.TABLE_NAME +
                         "." + WeatherContract.LocationEntry._ID);
+
+        // Full-text tables have no _id column, but their docid serves the same purpose
+        sCitySearchQueryBuilder = new SQLiteQueryBuilder();
+        sCitySearchQueryBuilder.setTables(WeatherContract.CitySearchEntry.TABLE_NAME);
+        HashMap<String, String> citySearchColumns = new HashMap<>();
+        citySearchColumns.put(WeatherContract.CitySearchEntry._ID,
+                "docid AS " + WeatherContract.CitySearchEntry._ID);
+        citySearchColumns.put(WeatherContract.CitySearchEntry.COLUMN_CITY_NAME,
+                WeatherContract.CitySearchEntry.COLUMN_CITY_NAME);
+        citySearchColumns.put(WeatherContract.CitySearchEntry.COLUMN_COUNTRY,
+                WeatherContract.CitySearchEntry.COLUMN_COUNTRY);
+        citySearchColumns.put(WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING,
+                WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING);
+        sCitySearchQueryBuilder.setProjectionMap(citySearchColumns);
     }
 
+    //city_search MATCH ?
+    private static final String sCitySearchSelection =
+            WeatherContract.CitySearchEntry.TABLE_NAME + " MATCH ? ";
+
+    // Stored locations first, then the shortest names, which are the closest matches
+    private static final String sCitySearchSortOrder =
+            "(" + WeatherContract.CitySearchEntry.COLUMN_COUNTRY + " = '') DESC, " +
+                    "length(" + WeatherContract.CitySearchEntry.COLUMN_CITY_NAME + ") ASC";
+
+    private static final String[] sCitySearchDefaultProjection = {
+            WeatherContract.CitySearchEntry._ID,
+            WeatherContract.CitySearchEntry.COLUMN_CITY_NAME,
+            WeatherContract.CitySearchEntry.COLUMN_COUNTRY,
+            WeatherContract.CitySearchEntry.COLUMN_LOCATION_SETTING
+    };
+
     //location.location_setting = ?
     private static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
@@ -68,6 +131,60 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    private SQLiteQueryBuilder getWeatherByLocationSettingQueryBuilder() {
+        return mOpenHelper.isCompactStorage()
+                ? CompactWeatherStorage.sWeatherByLocationSettingQueryBuilder
+                : sWeatherByLocationSettingQueryBuilder;
+    }
+
+    /**
+     * The compact layout can't be read with "*", so asking for every column means asking for
+     * each of them by name.
+     */
+    private String[] getWeatherProjection(String[] projection, boolean withLocation) {
+        if (projection == null && mOpenHelper.isCompactStorage()) {
+            return CompactWeatherStorage.getDefaultProjection(withLocation);
+        }
+        return projection;
+    }
+
+    /**
+     * @return the values to write to the weather table, in the layout the database uses
+     */
+    private ContentValues toStoredWeather(SQLiteDatabase db, ContentValues values) {
+        normalizeDate(values);
+        if (!mOpenHelper.isCompactStorage()) {
+            return values;
+        }
+        ContentValues stored = new ContentValues(values);
+        CompactWeatherStorage.encode(db, stored);
+        return stored;
+    }
+
+    private Cursor queryWeatherTable(String[] projection, String selection,
+                                     String[] selectionArgs, String sortOrder) {
+        if (mOpenHelper.isCompactStorage()) {
+            return CompactWeatherStorage.sWeatherQueryBuilder.query(
+                    mOpenHelper.getReadableDatabase(),
+                    getWeatherProjection(projection, false),
+                    selection,
+                    selectionArgs,
+                    null,
+                    null,
+                    sortOrder
+            );
+        }
+        return mOpenHelper.getReadableDatabase().query(
+                WeatherContract.WeatherEntry.TABLE_NAME,
+                projection,
+                selection,
+                selectionArgs,
+                null,
+                null,
+                sortOrder
+        );
+    }
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
@@ -83,8 +200,8 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
+        return getWeatherByLocationSettingQueryBuilder().query(mOpenHelper.getReadableDatabase(),
+                getWeatherProjection(projection, true),
                 selection,
                 selectionArgs,
                 null,
@@ -98,8 +215,8 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
+        return getWeatherByLocationSettingQueryBuilder().query(mOpenHelper.getReadableDatabase(),
+                getWeatherProjection(projection, true),
                 sLocationSettingAndDaySelection,
                 new String[]{locationSetting, Long.toString(date)},
                 null,
@@ -108,6 +225,180 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    //geohash >= ? AND geohash < ?
+    private static final String sGeohashRangeSelection =
+            WeatherContract.LocationEntry.COLUMN_GEOHASH + " >= ? AND " +
+                    WeatherContract.LocationEntry.COLUMN_GEOHASH + " < ? ";
+
+    /**
+     * Finds the stored locations within the uri's radius, nearest first.  Only the locations in
+     * the geohash cells around the point are read, using the geohash index, and of those the
+     * ones that are too far away are dropped.
+     */
+    private Cursor getLocationsNear(Uri uri, String[] projection) {
+        final double lat = WeatherContract.LocationEntry.getLatitudeFromUri(uri);
+        final double lon = WeatherContract.LocationEntry.getLongitudeFromUri(uri);
+        double radius = WeatherContract.LocationEntry.getRadiusFromUri(uri);
+
+        Set<String> cells = GeoHash.neighbourhood(lat, lon,
+                GeoHash.precisionForRadius(lat, radius));
+        StringBuilder selection = new StringBuilder();
+        String[] selectionArgs = new String[cells.size() * 2];
+        int arg = 0;
+        for (String cell : cells) {
+            if (arg > 0) {
+                selection.append(" OR ");
+            }
+            selection.append('(').append(sGeohashRangeSelection).append(')');
+            selectionArgs[arg++] = cell;
+            selectionArgs[arg++] = GeoHash.prefixEnd(cell);
+        }
+
+        Cursor candidates = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                null,
+                selection.toString(),
+                selectionArgs,
+                null,
+                null,
+                null);
+        try {
+            int latIndex = candidates.getColumnIndex(WeatherContract.LocationEntry.COLUMN_COORD_LAT);
+            int lonIndex = candidates.getColumnIndex(WeatherContract.LocationEntry.COLUMN_COORD_LONG);
+            List<Integer> positions = new ArrayList<>();
+            final double[] distances = new double[candidates.getCount()];
+            while (candidates.moveToNext()) {
+                double distance = GeoHash.distanceMeters(lat, lon,
+                        candidates.getDouble(latIndex), candidates.getDouble(lonIndex));
+                if (distance <= radius) {
+                    distances[candidates.getPosition()] = distance;
+                    positions.add(candidates.getPosition());
+                }
+            }
+            Collections.sort(positions, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer lhs, Integer rhs) {
+                    return Double.compare(distances[lhs], distances[rhs]);
+                }
+            });
+
+            if (projection == null) {
+                String[] columns = candidates.getColumnNames();
+                projection = new String[columns.length + 1];
+                System.arraycopy(columns, 0, projection, 0, columns.length);
+                projection[columns.length] = WeatherContract.LocationEntry.COLUMN_DISTANCE;
+            }
+            MatrixCursor near = new MatrixCursor(projection, positions.size());
+            for (int position : positions) {
+                candidates.moveToPosition(position);
+                Object[] row = new Object[projection.length];
+                for (int i = 0; i < projection.length; i++) {
+                    String column = projection[i];
+                    if (WeatherContract.LocationEntry.COLUMN_DISTANCE.equals(column)) {
+                        row[i] = distances[position];
+                    } else if (WeatherContract.LocationEntry.COLUMN_COORD_LAT.equals(column)
+                            || WeatherContract.LocationEntry.COLUMN_COORD_LONG.equals(column)) {
+                        // Reading these as strings would round them
+                        row[i] = candidates.getDouble(candidates.getColumnIndexOrThrow(column));
+                    } else {
+                        row[i] = candidates.getString(candidates.getColumnIndexOrThrow(column));
+                    }
+                }
+                near.addRow(row);
+            }
+            return near;
+        } finally {
+            candidates.close();
+        }
+    }
+
+    private Cursor getCitySuggestions(Uri uri, String[] projection) {
+        if (projection == null) {
+            projection = sCitySearchDefaultProjection;
+        }
+        String match = buildPrefixMatch(WeatherContract.CitySearchEntry.getTypedFromUri(uri));
+        if (match.length() == 0) {
+            return new MatrixCursor(projection, 0);
+        }
+        return sCitySearchQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+                projection,
+                sCitySearchSelection,
+                new String[]{match},
+                null,
+                null,
+                sCitySearchSortOrder,
+                CITY_SEARCH_LIMIT
+        );
+    }
+
+    /**
+     * Turns what the user typed into a full-text query where every word has to match the start
+     * of a word.  Anything other than letters and digits only separates words, so that it can't
+     * be taken for query syntax.
+     */
+    static String buildPrefixMatch(String typed) {
+        StringBuilder match = new StringBuilder();
+        int wordStart = -1;
+        for (int i = 0; i <= typed.length(); i++) {
+            boolean inWord = i < typed.length() && Character.isLetterOrDigit(typed.charAt(i));
+            if (inWord && wordStart == -1) {
+                wordStart = i;
+            } else if (!inWord && wordStart != -1) {
+                if (match.length() > 0) {
+                    match.append(' ');
+                }
+                match.append(typed, wordStart, i).append('*');
+                wordStart = -1;
+            }
+        }
+        return match.toString();
+    }
+
+    /**
+     * Asks for the location's forecast to be fetched again if it has expired, unless that was
+     * already asked for recently.  Only the preferred location is synced, so others are left
+     * alone.
+     */
+    private void revalidateIfExpired(Uri uri) {
+        String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
+        if (!locationSetting.equals(Utility.getPreferredLocation(getContext()))) {
+            return;
+        }
+
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(
+                WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_EXPIRES_AT},
+                sLocationSettingSelection,
+                new String[]{locationSetting},
+                null,
+                null,
+                null);
+        long expiresAt;
+        try {
+            if (!cursor.moveToFirst()) {
+                // Never fetched, which the initial sync takes care of
+                return;
+            }
+            expiresAt = cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+
+        long now = System.currentTimeMillis();
+        if (now < expiresAt) {
+            return;
+        }
+        synchronized (mRevalidationTimes) {
+            Long requested = mRevalidationTimes.get(locationSetting);
+            if (requested != null && now - requested < REVALIDATE_RETRY_MILLIS) {
+                return;
+            }
+            mRevalidationTimes.put(locationSetting, now);
+        }
+        Log.d(LOG_TAG, "Serving expired forecast for " + locationSetting + ", refreshing it");
+        SunshineSyncAdapter.requestRefresh(getContext());
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,16 +421,41 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_LOCATION + "/" + WeatherContract.PATH_NEAR,
+                LOCATION_NEAR);
+
+        matcher.addURI(authority, WeatherContract.PATH_CITY_SEARCH + "/*", CITY_SEARCH);
+
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY + "/*", HISTORY_WITH_LOCATION);
+
+        matcher.addURI(authority, WeatherContract.PATH_CLIMATE, CLIMATE);
+        matcher.addURI(authority, WeatherContract.PATH_CLIMATE + "/*/*",
+                CLIMATE_WITH_LOCATION_AND_PERIOD);
         return matcher;
     }
 
+    public WeatherProvider() {
+    }
+
+    /**
+     * A provider on the given database rather than the one the resources choose, for testing
+     * the provider against either weather layout.
+     */
+    WeatherProvider(WeatherDbHelper openHelper) {
+        mOpenHelper = openHelper;
+    }
+
     /*
         Students: We've coded this for you.  We just create a new WeatherDbHelper for later use
         here.
      */
     @Override
     public boolean onCreate() {
-        mOpenHelper = new WeatherDbHelper(getContext());
+        if (mOpenHelper == null) {
+            mOpenHelper = new WeatherDbHelper(getContext(),
+                    getContext().getResources().getBoolean(R.bool.compact_weather_storage));
+        }
         return true;
     }
 
@@ -164,6 +480,18 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case LOCATION_NEAR:
+                return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case CITY_SEARCH:
+                return WeatherContract.CitySearchEntry.CONTENT_TYPE;
+            case HISTORY:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case HISTORY_WITH_LOCATION:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
+            case CLIMATE:
+                return WeatherContract.ClimateEntry.CONTENT_TYPE;
+            case CLIMATE_WITH_LOCATION_AND_PERIOD:
+                return WeatherContract.ClimateEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -180,17 +508,28 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER_WITH_LOCATION_AND_DATE:
             {
                 retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
+                if (WeatherContract.isRevalidating(uri)) {
+                    revalidateIfExpired(uri);
+                }
                 break;
             }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
                 retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                if (WeatherContract.isRevalidating(uri)) {
+                    revalidateIfExpired(uri);
+                }
                 break;
             }
             // "weather"
             case WEATHER: {
+                retCursor = queryWeatherTable(projection, selection, selectionArgs, sortOrder);
+                break;
+            }
+            // "location"
+            case LOCATION: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.WeatherEntry.TABLE_NAME,
+                        WeatherContract.LocationEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
@@ -200,10 +539,42 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
-            // "location"
-            case LOCATION: {
+            // "location/near"
+            case LOCATION_NEAR: {
+                retCursor = getLocationsNear(uri, projection);
+                break;
+            }
+            // "city_search/*"
+            case CITY_SEARCH: {
+                retCursor = getCitySuggestions(uri, projection);
+                break;
+            }
+            // "history"
+            case HISTORY: {
                 retCursor = mOpenHelper.getReadableDatabase().query(
-                        WeatherContract.LocationEntry.TABLE_NAME,
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
+            // "history/*"
+            case HISTORY_WITH_LOCATION: {
+                retCursor = HistoryArchive.query(mOpenHelper.getReadableDatabase(),
+                        WeatherContract.HistoryEntry.getLocationSettingFromUri(uri),
+                        WeatherContract.HistoryEntry.getStartDateFromUri(uri),
+                        WeatherContract.HistoryEntry.getEndDateFromUri(uri),
+                        projection);
+                break;
+            }
+            // "climate"
+            case CLIMATE: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.ClimateEntry.TABLE_NAME,
                         projection,
                         selection,
                         selectionArgs,
@@ -213,6 +584,18 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "climate/*/*"
+            case CLIMATE_WITH_LOCATION_AND_PERIOD: {
+                retCursor = ClimateRollup.query(mOpenHelper.getReadableDatabase(),
+                        WeatherContract.ClimateEntry.getLocationSettingFromUri(uri),
+                        WeatherContract.ClimateEntry.getPeriodFromUri(uri),
+                        WeatherContract.ClimateEntry.getStartDateFromUri(uri),
+                        WeatherContract.ClimateEntry.getEndDateFromUri(uri),
+                        WeatherContract.ClimateEntry.getPercentileFromUri(uri),
+                        projection,
+                        sortOrder);
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -232,8 +615,8 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER: {
-                normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                        toStoredWeather(db, values));
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -241,6 +624,7 @@ public class WeatherProvider extends ContentProvider {
                 break;
             }
             case LOCATION: {
+                addGeohash(values);
                 long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
                 if ( _id > 0 )
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
@@ -271,6 +655,14 @@ public class WeatherProvider extends ContentProvider {
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
                 break;
+            case HISTORY:
+                rowsDeleted = db.delete(
+                        WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
+                break;
+            case CLIMATE:
+                rowsDeleted = db.delete(
+                        WeatherContract.ClimateEntry.TABLE_NAME, selection, selectionArgs);
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -281,6 +673,17 @@ public class WeatherProvider extends ContentProvider {
         return rowsDeleted;
     }
 
+    private void addGeohash(ContentValues values) {
+        // Only a change of both coordinates moves a location
+        if (values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LAT)
+                && values.containsKey(WeatherContract.LocationEntry.COLUMN_COORD_LONG)) {
+            values.put(WeatherContract.LocationEntry.COLUMN_GEOHASH, GeoHash.encode(
+                    values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LAT),
+                    values.getAsDouble(WeatherContract.LocationEntry.COLUMN_COORD_LONG),
+                    GeoHash.MAX_PRECISION));
+        }
+    }
+
     private void normalizeDate(ContentValues values) {
         // normalize the date value
         if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_DATE)) {
@@ -289,6 +692,59 @@ public class WeatherProvider extends ContentProvider {
         }
     }
 
+    //date < ?
+    private static final String sDateBeforeSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " < ? ";
+
+    /**
+     * Moves the days of every month that ended before the date out of the weather table and
+     * into the archive, in a single transaction.
+     *
+     * @return the number of days archived
+     */
+    private int archiveHistory(SQLiteDatabase db, long beforeDate) {
+        String[] selectionArgs = {Long.toString(HistoryArchive.getMonthStart(beforeDate))};
+        db.beginTransaction();
+        try {
+            // Days leave the weather table here, so they must be in the climate rollups first
+            settleClimate(db);
+            Cursor days = queryWeatherTable(HistoryArchive.ARCHIVE_PROJECTION,
+                    sDateBeforeSelection, selectionArgs,
+                    WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " ASC, " +
+                            WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+            int archived;
+            try {
+                archived = HistoryArchive.archive(db, days);
+            } finally {
+                days.close();
+            }
+            db.delete(WeatherContract.WeatherEntry.TABLE_NAME, sDateBeforeSelection,
+                    selectionArgs);
+            db.setTransactionSuccessful();
+            return archived;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Adds the days that are over to the climate rollups, in the caller's transaction.
+     *
+     * @return the number of days added
+     */
+    private int settleClimate(SQLiteDatabase db) {
+        String today = Long.toString(WeatherContract.normalizeDate(System.currentTimeMillis()));
+        Cursor days = queryWeatherTable(ClimateRollup.SETTLE_PROJECTION,
+                ClimateRollup.sUnsettledSelection, new String[]{today},
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " ASC, " +
+                        WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        try {
+            return ClimateRollup.settle(db, days);
+        } finally {
+            days.close();
+        }
+    }
+
     @Override
     public int update(
             Uri uri, ContentValues values, String selection, String[] selectionArgs) {
@@ -298,14 +754,23 @@ public class WeatherProvider extends ContentProvider {
 
         switch (match) {
             case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME,
+                        toStoredWeather(db, values), selection, selectionArgs);
                 break;
             case LOCATION:
+                addGeohash(values);
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
                 break;
+            case HISTORY:
+                rowsUpdated = archiveHistory(db,
+                        WeatherContract.HistoryEntry.getBeforeDateFromUri(uri));
+                if (rowsUpdated != 0) {
+                    // The archived days are gone from the weather table
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.WeatherEntry.CONTENT_URI, null);
+                }
+                break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -323,25 +788,49 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                int settledCount;
                 try {
                     for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
+                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null,
+                                toStoredWeather(db, value));
                         if (_id != -1) {
                             returnCount++;
                         }
                     }
+                    settledCount = settleClimate(db);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
                 getContext().getContentResolver().notifyChange(uri, null);
+                if (settledCount != 0) {
+                    getContext().getContentResolver().notifyChange(
+                            WeatherContract.ClimateEntry.CONTENT_URI, null);
+                }
                 return returnCount;
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in a single transaction, so that a batch either lands completely
+     * or not at all.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            return results;
+        } finally {
+            db.endTransaction();
+        }
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.gcm;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.OperationApplicationException;
+import android.database.Cursor;
+import android.os.RemoteException;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Forecast changes pushed by the server for one location, in the compact form
+ * <pre>
+ * {"location": "94043",
+ *  "days": [{"date": 1419033600000, "max": 21.5, "min": 12},
+ *           {"date": 1419120000000, "id": 500, "desc": "Light Rain", "max": 18, "min": 11,
+ *            "hum": 80, "pres": 1012, "wind": 4.2, "deg": 270}]}
+ * </pre>
+ * Each day holds only the fields that changed, keyed by its normalized date.  A day with every
+ * field is a new day and is inserted; any other day updates the stored one.
+ */
+class ForecastDelta {
+    private static final String LOG_TAG = ForecastDelta.class.getSimpleName();
+
+    static final String JSON_LOCATION = "location";
+    static final String JSON_DAYS = "days";
+    static final String JSON_DATE = "date";
+
+    // Short field names to keep the push payload small, and the columns they set
+    private static final String[][] FIELDS = {
+            {"id", WeatherContract.WeatherEntry.COLUMN_WEATHER_ID},
+            {"desc", WeatherContract.WeatherEntry.COLUMN_SHORT_DESC},
+            {"max", WeatherContract.WeatherEntry.COLUMN_MAX_TEMP},
+            {"min", WeatherContract.WeatherEntry.COLUMN_MIN_TEMP},
+            {"hum", WeatherContract.WeatherEntry.COLUMN_HUMIDITY},
+            {"pres", WeatherContract.WeatherEntry.COLUMN_PRESSURE},
+            {"wind", WeatherContract.WeatherEntry.COLUMN_WIND_SPEED},
+            {"deg", WeatherContract.WeatherEntry.COLUMN_DEGREES},
+    };
+
+    private final String mLocationSetting;
+    private final List<ContentValues> mDays;
+
+    private ForecastDelta(String locationSetting, List<ContentValues> days) {
+        mLocationSetting = locationSetting;
+        mDays = days;
+    }
+
+    /**
+     * @throws JSONException if the payload isn't a forecast delta
+     */
+    static ForecastDelta parse(String json) throws JSONException {
+        JSONObject delta = new JSONObject(json);
+        String locationSetting = delta.getString(JSON_LOCATION);
+        JSONArray days = delta.getJSONArray(JSON_DAYS);
+        List<ContentValues> values = new ArrayList<>(days.length());
+        for (int i = 0; i < days.length(); i++) {
+            JSONObject day = days.getJSONObject(i);
+            ContentValues dayValues = new ContentValues();
+            dayValues.put(WeatherContract.WeatherEntry.COLUMN_DATE,
+                    WeatherContract.normalizeDate(day.getLong(JSON_DATE)));
+            Iterator<String> keys = day.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                if (JSON_DATE.equals(key)) {
+                    continue;
+                }
+                String column = columnFor(key);
+                if (column == null) {
+                    throw new JSONException("Unknown field " + key);
+                }
+                if (WeatherContract.WeatherEntry.COLUMN_SHORT_DESC.equals(column)) {
+                    dayValues.put(column, day.getString(key));
+                } else if (WeatherContract.WeatherEntry.COLUMN_WEATHER_ID.equals(column)) {
+                    dayValues.put(column, day.getInt(key));
+                } else {
+                    dayValues.put(column, day.getDouble(key));
+                }
+            }
+            values.add(dayValues);
+        }
+        return new ForecastDelta(locationSetting, values);
+    }
+
+    private static String columnFor(String field) {
+        for (String[] mapping : FIELDS) {
+            if (mapping[0].equals(field)) {
+                return mapping[1];
+            }
+        }
+        return null;
+    }
+
+    String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    int getDayCount() {
+        return mDays.size();
+    }
+
+    /**
+     * @return the changed fields of each day, with its date
+     */
+    ContentValues[] getDays() {
+        return mDays.toArray(new ContentValues[mDays.size()]);
+    }
+
+    /**
+     * Applies the delta to the stored forecast in one transaction, so that readers see either
+     * all of it or none of it.  Deltas for locations that aren't stored are ignored.
+     *
+     * @return false if the delta couldn't be applied, because a day it updates isn't stored
+     * or the location is unknown
+     */
+    boolean apply(Context context) {
+        long locationId = findLocationId(context);
+        if (locationId == -1) {
+            Log.d(LOG_TAG, "Ignoring forecast for unknown location " + mLocationSetting);
+            return false;
+        }
+        ArrayList<ContentProviderOperation> operations = new ArrayList<>(mDays.size());
+        for (ContentValues day : mDays) {
+            if (day.size() == FIELDS.length + 1) {
+                ContentValues values = new ContentValues(day);
+                values.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
+                operations.add(ContentProviderOperation
+                        .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withValues(values)
+                        .build());
+            } else {
+                // Fails the whole batch if the day isn't there to update
+                operations.add(ContentProviderOperation
+                        .newUpdate(WeatherContract.WeatherEntry.CONTENT_URI)
+                        .withSelection(WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND "
+                                        + WeatherContract.WeatherEntry.COLUMN_DATE + " = ?",
+                                new String[]{Long.toString(locationId),
+                                        day.getAsString(WeatherContract.WeatherEntry.COLUMN_DATE)})
+                        .withValues(day)
+                        .withExpectedCount(1)
+                        .build());
+            }
+        }
+        try {
+            context.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY, operations);
+            return true;
+        } catch (OperationApplicationException | RemoteException e) {
+            Log.w(LOG_TAG, "Couldn't apply forecast for " + mLocationSetting, e);
+            return false;
+        }
+    }
+
+    private long findLocationId(Context context) {
+        Cursor cursor = context.getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry._ID},
+                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{mLocationSetting},
+                null);
+        if (cursor == null) {
+            return -1;
+        }
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -29,6 +29,8 @@ import android.widget.Toast;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 import com.google.android.gms.gcm.GcmListenerService;
 
 import org.json.JSONException;
@@ -41,6 +43,8 @@ public class MyGcmListenerService extends GcmListenerService {
     private static final String EXTRA_DATA = "data";
     private static final String EXTRA_WEATHER = "weather";
     private static final String EXTRA_LOCATION = "location";
+    // A ForecastDelta for a location the server knows we follow
+    static final String EXTRA_FORECAST = "forecast";
 
     public static final int NOTIFICATION_ID = 1;
 
@@ -62,6 +66,10 @@ public class MyGcmListenerService extends GcmListenerService {
             }
             // Not a bad idea to check that the message is coming from your server.
             if ((senderId).equals(from)) {
+                if (data.containsKey(EXTRA_FORECAST)) {
+                    handleForecast(this, data);
+                    return;
+                }
                 // Process message and then post a notification of the received message.
                 try {
                     JSONObject jsonObject = new JSONObject(data.getString(EXTRA_DATA));
@@ -79,6 +87,39 @@ public class MyGcmListenerService extends GcmListenerService {
         }
     }
 
+    /**
+     * Applies a pushed forecast delta straight to the database and tells everything showing the
+     * forecast, without waiting for the next sync.  When the delta doesn't fit what is stored,
+     * for example because a day it updates was never synced, a sync is requested instead.
+     *
+     * @return whether the delta was applied
+     */
+    static boolean handleForecast(Context context, Bundle data) {
+        String json = data.getString(EXTRA_FORECAST);
+        if (json == null) {
+            return false;
+        }
+        ForecastDelta delta;
+        try {
+            delta = ForecastDelta.parse(json);
+        } catch (JSONException e) {
+            Log.w(TAG, "Ignoring malformed forecast", e);
+            return false;
+        }
+        if (!delta.apply(context)) {
+            if (delta.getLocationSetting().equals(Utility.getPreferredLocation(context))) {
+                SunshineSyncAdapter.syncImmediately(context);
+            }
+            return false;
+        }
+        Log.d(TAG, "Applied " + delta.getDayCount() + " pushed days for "
+                + delta.getLocationSetting());
+        if (delta.getLocationSetting().equals(Utility.getPreferredLocation(context))) {
+            SunshineSyncAdapter.notifyDataUpdated(context, delta.getDays());
+        }
+        return true;
+    }
+
     /**
      *  Put the message into a notification and post it.
      *  This is just one simple example of what you might choose to do with a GCM message.
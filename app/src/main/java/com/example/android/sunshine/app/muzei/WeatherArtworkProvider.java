@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.muzei;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.DisplayMetrics;
+import android.util.Log;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.request.FutureTarget;
+import com.example.android.sunshine.app.Utility;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Read-only provider serving the Muzei wallpapers from a local store of photos that have
+ * already been scaled to the screen and encoded, so that Muzei doesn't have to download the
+ * full size originals itself.  Artwork is stored per weather condition and screen size.
+ */
+public class WeatherArtworkProvider extends ContentProvider {
+    private static final String LOG_TAG = WeatherArtworkProvider.class.getSimpleName();
+
+    public static final String CONTENT_AUTHORITY = "com.example.android.sunshine.app.muzei";
+    private static final Uri BASE_CONTENT_URI = Uri.parse("content://" + CONTENT_AUTHORITY);
+    private static final String PATH_ARTWORK = "artwork";
+
+    private static final String ARTWORK_DIR = "muzei_artwork";
+    private static final int JPEG_QUALITY = 85;
+
+    private static final int ARTWORK = 100;
+    private static final UriMatcher sUriMatcher = buildUriMatcher();
+
+    private static UriMatcher buildUriMatcher() {
+        UriMatcher matcher = new UriMatcher(UriMatcher.NO_MATCH);
+        // artwork/<weather id>/<width>x<height>
+        matcher.addURI(CONTENT_AUTHORITY, PATH_ARTWORK + "/#/*", ARTWORK);
+        return matcher;
+    }
+
+    /**
+     * Returns the uri of the artwork for the weather condition at the given size, scaling and
+     * encoding it into the store first if needed.  Must not be called from the main thread.
+     * The size is clamped to the screen, which no wallpaper needs to exceed.
+     *
+     * @return the artwork uri, or null if there is no image for the condition or it couldn't
+     * be retrieved
+     */
+    public static Uri getArtworkUri(Context context, int weatherId, int width, int height) {
+        DisplayMetrics displayMetrics = context.getResources().getDisplayMetrics();
+        int maxSize = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+        width = Math.min(width, maxSize);
+        height = Math.min(height, maxSize);
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+        File file = getArtworkFile(context, weatherId, width, height);
+        if (!file.exists() && !renderArtwork(context, weatherId, width, height, file)) {
+            return null;
+        }
+        return BASE_CONTENT_URI.buildUpon()
+                .appendPath(PATH_ARTWORK)
+                .appendPath(Integer.toString(weatherId))
+                .appendPath(width + "x" + height)
+                .build();
+    }
+
+    private static File getArtworkFile(Context context, int weatherId, int width, int height) {
+        return new File(new File(context.getFilesDir(), ARTWORK_DIR),
+                weatherId + "_" + width + "x" + height + ".jpg");
+    }
+
+    private static boolean renderArtwork(Context context, int weatherId, int width, int height,
+                                         File file) {
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        if (imageUrl == null) {
+            return false;
+        }
+        File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            return false;
+        }
+        // Glide keeps the bitmap for the decode of the photo, so hand it back once encoded
+        FutureTarget<Bitmap> target = Glide.with(context)
+                .load(imageUrl)
+                .asBitmap()
+                .format(DecodeFormat.PREFER_RGB_565)
+                .diskCacheStrategy(DiskCacheStrategy.SOURCE)
+                .centerCrop()
+                .into(width, height);
+        // Write to a temporary file so that Muzei can never read a partial image
+        File tmpFile = new File(dir, file.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            Bitmap bitmap = target.get();
+            out = new FileOutputStream(tmpFile);
+            if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                return false;
+            }
+            out.close();
+            out = null;
+            return tmpFile.renameTo(file);
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            Log.e(LOG_TAG, "Error rendering artwork from " + imageUrl, e);
+            return false;
+        } finally {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+            tmpFile.delete();
+            Glide.clear(target);
+        }
+    }
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Override
+    public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+        if (sUriMatcher.match(uri) != ARTWORK || !"r".equals(mode)) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        List<String> segments = uri.getPathSegments();
+        String[] size = segments.get(2).split("x");
+        File file;
+        try {
+            file = getArtworkFile(getContext(), Integer.parseInt(segments.get(1)),
+                    Integer.parseInt(size[0]), Integer.parseInt(size[1]));
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new FileNotFoundException("Unknown uri: " + uri);
+        }
+        return ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        if (sUriMatcher.match(uri) == ARTWORK) {
+            return "image/jpeg";
+        }
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs,
+                        String sortOrder) {
+        // The artwork is only available as a stream
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        throw new UnsupportedOperationException("Unknown uri: " + uri);
+    }
+}
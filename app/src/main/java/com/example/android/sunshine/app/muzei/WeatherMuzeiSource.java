@@ -18,6 +18,7 @@ package com.example.android.sunshine.app.muzei;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
+import android.util.DisplayMetrics;
 
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.Utility;
@@ -30,6 +31,9 @@ import com.google.android.apps.muzei.api.MuzeiArtSource;
  * Muzei source that changes your background based on the current weather conditions
  */
 public class WeatherMuzeiSource extends MuzeiArtSource {
+    // Muzei reads the artwork from WeatherArtworkProvider, which isn't exported
+    private static final String MUZEI_PACKAGE = "net.nurik.roman.muzei";
+
     private static final String[] FORECAST_COLUMNS = new String[]{
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
@@ -63,11 +67,27 @@ public class WeatherMuzeiSource extends MuzeiArtSource {
             int weatherId = cursor.getInt(INDEX_WEATHER_ID);
             String desc = cursor.getString(INDEX_SHORT_DESC);
 
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+            // Scale the artwork to the screen in portrait orientation
+            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+            int width = Math.min(displayMetrics.widthPixels, displayMetrics.heightPixels);
+            int height = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+
+            // Don't publish again if the wallpaper already shows this condition
+            String token = location + "|" + weatherId + "|" + width + "x" + height;
+            Artwork currentArtwork = getCurrentArtwork();
+            if (currentArtwork != null && token.equals(currentArtwork.getToken())) {
+                cursor.close();
+                return;
+            }
+
+            Uri artworkUri = WeatherArtworkProvider.getArtworkUri(this, weatherId, width, height);
             // Only publish a new wallpaper if we have a valid image
-            if (imageUrl != null) {
+            if (artworkUri != null) {
+                grantUriPermission(MUZEI_PACKAGE, artworkUri,
+                        Intent.FLAG_GRANT_READ_URI_PERMISSION);
                 publishArtwork(new Artwork.Builder()
-                        .imageUri(Uri.parse(imageUrl))
+                        .imageUri(artworkUri)
+                        .token(token)
                         .title(desc)
                         .byline(location)
                         .viewIntent(new Intent(this, MainActivity.class))
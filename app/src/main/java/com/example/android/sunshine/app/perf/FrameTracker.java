@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.WindowManager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the time between frames into a {@link JankStats.Screen} while started.  Frames are
+ * only tracked while something animates, since asking for every frame keeps the display
+ * drawing.  Frame timing needs the Choreographer, so before Jelly Bean this does nothing.
+ */
+public class FrameTracker {
+
+    /**
+     * @param screen the {@link JankStats} screen to record into
+     */
+    public static FrameTracker create(Context context, String screen) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            WindowManager windowManager =
+                    (WindowManager) context.getSystemService(Context.WINDOW_SERVICE);
+            float refreshRate = windowManager.getDefaultDisplay().getRefreshRate();
+            return new ChoreographerFrameTracker(JankStats.getInstance().getScreen(screen),
+                    (long) (TimeUnit.SECONDS.toNanos(1) / (refreshRate > 0 ? refreshRate : 60)));
+        }
+        return new FrameTracker();
+    }
+
+    FrameTracker() {
+    }
+
+    public void start() {
+    }
+
+    public void stop() {
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class ChoreographerFrameTracker extends FrameTracker
+            implements Choreographer.FrameCallback {
+        private final JankStats.Screen mScreen;
+        private final long mRefreshNanos;
+        private boolean mRunning;
+        private long mLastFrameNanos;
+
+        ChoreographerFrameTracker(JankStats.Screen screen, long refreshNanos) {
+            mScreen = screen;
+            mRefreshNanos = refreshNanos;
+        }
+
+        @Override
+        public void start() {
+            if (mRunning) {
+                return;
+            }
+            mRunning = true;
+            mLastFrameNanos = 0;
+            mScreen.beginTracking();
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void stop() {
+            if (!mRunning) {
+                return;
+            }
+            mRunning = false;
+            Choreographer.getInstance().removeFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (!mRunning) {
+                return;
+            }
+            if (mLastFrameNanos != 0) {
+                mScreen.recordFrame(frameTimeNanos - mLastFrameNanos, mRefreshNanos);
+            }
+            mLastFrameNanos = frameTimeNanos;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+}
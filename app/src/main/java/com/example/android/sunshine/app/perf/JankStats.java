@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import com.example.Histogram;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame timing for the screens whose smoothness we care about, recorded by {@link FrameTracker}
+ * while they animate.  A frame is janky when it took more than one and a half refresh periods.
+ * Janky frames are attributed to view binding or scroll listeners when those took more than
+ * half a refresh period of the frame.  Only used on the main thread.
+ */
+public class JankStats {
+    public static final String SCREEN_FORECAST_LIST = "forecast_list";
+    public static final String SCREEN_DETAIL_TRANSITION = "detail_transition";
+
+    private static final JankStats sInstance = new JankStats();
+
+    private final Map<String, Screen> mScreens = new LinkedHashMap<>();
+
+    public static JankStats getInstance() {
+        return sInstance;
+    }
+
+    private JankStats() {
+        mScreens.put(SCREEN_FORECAST_LIST, new Screen());
+        mScreens.put(SCREEN_DETAIL_TRANSITION, new Screen());
+    }
+
+    public Screen getScreen(String name) {
+        Screen screen = mScreens.get(name);
+        if (screen == null) {
+            screen = new Screen();
+            mScreens.put(name, screen);
+        }
+        return screen;
+    }
+
+    public void reset() {
+        for (Screen screen : mScreens.values()) {
+            screen.reset();
+        }
+    }
+
+    public JSONObject toJson() throws JSONException {
+        JSONObject screens = new JSONObject();
+        for (Map.Entry<String, Screen> entry : mScreens.entrySet()) {
+            screens.put(entry.getKey(), entry.getValue().toJson());
+        }
+        return new JSONObject().put("screens", screens);
+    }
+
+    public static class Screen {
+        private final Histogram mFrameMicros = new Histogram("us");
+        private final Histogram mBindMicros = new Histogram("us");
+        private final Histogram mScrollListenerMicros = new Histogram("us");
+        private long mJankFrames;
+        private long mDroppedFrames;
+        private long mJankFramesSlowBind;
+        private long mJankFramesSlowScrollListener;
+        // Work done since the last frame, to attribute the next one
+        private long mFrameBindNanos;
+        private long mFrameScrollListenerNanos;
+
+        /**
+         * Records the time one adapter bind took.
+         */
+        public void recordBind(long nanos) {
+            mBindMicros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            mFrameBindNanos += nanos;
+        }
+
+        /**
+         * Records the time a scroll listener took for one scroll event.
+         */
+        public void recordScrollListener(long nanos) {
+            mScrollListenerMicros.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+            mFrameScrollListenerNanos += nanos;
+        }
+
+        /**
+         * Forgets the work done while no frames were being tracked.
+         */
+        void beginTracking() {
+            mFrameBindNanos = 0;
+            mFrameScrollListenerNanos = 0;
+        }
+
+        /**
+         * Records a frame.
+         *
+         * @param frameNanos time since the previous frame
+         * @param refreshNanos the display's refresh period
+         */
+        void recordFrame(long frameNanos, long refreshNanos) {
+            mFrameMicros.record(TimeUnit.NANOSECONDS.toMicros(frameNanos));
+            if (frameNanos > refreshNanos * 3 / 2) {
+                mJankFrames++;
+                mDroppedFrames += (frameNanos + refreshNanos / 2) / refreshNanos - 1;
+                if (mFrameBindNanos > refreshNanos / 2) {
+                    mJankFramesSlowBind++;
+                }
+                if (mFrameScrollListenerNanos > refreshNanos / 2) {
+                    mJankFramesSlowScrollListener++;
+                }
+            }
+            mFrameBindNanos = 0;
+            mFrameScrollListenerNanos = 0;
+        }
+
+        void reset() {
+            mFrameMicros.reset();
+            mBindMicros.reset();
+            mScrollListenerMicros.reset();
+            mJankFrames = 0;
+            mDroppedFrames = 0;
+            mJankFramesSlowBind = 0;
+            mJankFramesSlowScrollListener = 0;
+            beginTracking();
+        }
+
+        JSONObject toJson() throws JSONException {
+            long frames = mFrameMicros.getCount();
+            return new JSONObject()
+                    .put("frames", frames)
+                    .put("jank_frames", mJankFrames)
+                    .put("jank_percent", frames == 0 ? 0 : 100.0 * mJankFrames / frames)
+                    .put("dropped_frames", mDroppedFrames)
+                    .put("jank_frames_slow_bind", mJankFramesSlowBind)
+                    .put("jank_frames_slow_scroll_listener", mJankFramesSlowScrollListener)
+                    .put("frame_time_us", toJson(mFrameMicros))
+                    .put("bind_us", toJson(mBindMicros))
+                    .put("scroll_listener_us", toJson(mScrollListenerMicros));
+        }
+
+        private static JSONObject toJson(Histogram histogram) throws JSONException {
+            return new JSONObject()
+                    .put("count", histogram.getCount())
+                    .put("mean", histogram.getMean())
+                    .put("p50", histogram.getPercentile(50))
+                    .put("p90", histogram.getPercentile(90))
+                    .put("p99", histogram.getPercentile(99))
+                    .put("max", histogram.getMax());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.perf;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.Toolbar;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.TextView;
+
+import com.example.android.sunshine.app.R;
+
+import org.json.JSONException;
+
+/**
+ * Debug screen showing the {@link JankStats} as JSON, which can be shared to get it off the
+ * device.  The JSON is also logged each time it is shown.
+ */
+public class JankStatsActivity extends AppCompatActivity {
+    private static final String LOG_TAG = JankStatsActivity.class.getSimpleName();
+    private static final int JSON_INDENT = 2;
+
+    private TextView mStatsView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_jank_stats);
+        Toolbar toolbar = (Toolbar) findViewById(R.id.toolbar);
+        setSupportActionBar(toolbar);
+        getSupportActionBar().setDisplayHomeAsUpEnabled(true);
+        mStatsView = (TextView) findViewById(R.id.jank_stats_text);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        showStats();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.jank_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_refresh) {
+            showStats();
+            return true;
+        } else if (id == R.id.action_reset) {
+            JankStats.getInstance().reset();
+            showStats();
+            return true;
+        } else if (id == R.id.action_share) {
+            Intent shareIntent = new Intent(Intent.ACTION_SEND)
+                    .setType("application/json")
+                    .putExtra(Intent.EXTRA_TEXT, mStatsView.getText().toString());
+            startActivity(Intent.createChooser(shareIntent, getString(R.string.action_share)));
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void showStats() {
+        String json;
+        try {
+            json = JankStats.getInstance().toJson().toString(JSON_INDENT);
+        } catch (JSONException e) {
+            json = e.toString();
+        }
+        Log.i(LOG_TAG, json);
+        mStatsView.setText(json);
+    }
+}
@@ -18,7 +18,6 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -29,11 +28,11 @@ import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 import com.example.android.sunshine.app.wearable.DataWearableService;
@@ -50,8 +49,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
@@ -63,6 +62,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL / 3;
+    // A fetched forecast is due for a refresh once the next periodic sync should have run
+    public static final long DATA_TTL_MILLIS = SYNC_INTERVAL * 1000L;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
@@ -364,15 +365,16 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 ContentValues[] cvArray = new ContentValues[cVVector.size()];
                 cVVector.toArray(cvArray);
                 getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+                updateFreshness(locationId);
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[]{Long.toString(dayTime.setJulianDay(julianStartDay - 1))});
+                // move past months into the compressed archive, so the weather table stays small
+                // however long the history grows
+                getContext().getContentResolver().update(
+                        WeatherContract.HistoryEntry.buildArchiveUri(
+                                dayTime.setJulianDay(julianStartDay)),
+                        new ContentValues(), null, null);
 
-                updateWidgets();
-                updateMuzei();
-                updateWearable();
+                notifyDataUpdated(getContext(), cvArray);
                 notifyWeather();
             }
             Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
@@ -385,27 +387,50 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void updateWidgets() {
-        Context context = getContext();
+    /**
+     * Tells the widgets, Muzei and the wearable that the forecast changed, after warming the
+     * shared art cache for them.
+     *
+     * @param weatherValues the rows that changed, for the conditions whose art to prefetch
+     */
+    public static void notifyDataUpdated(Context context, ContentValues[] weatherValues) {
+        prefetchWeatherArt(context, weatherValues);
+        updateWidgets(context);
+        updateMuzei(context);
+        updateWearable(context);
+    }
+
+    private static void prefetchWeatherArt(Context context, ContentValues[] weatherValues) {
+        // Pushed updates may leave the condition out of days where it didn't change
+        int[] weatherIds = new int[weatherValues.length];
+        int count = 0;
+        for (ContentValues values : weatherValues) {
+            Integer weatherId = values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID);
+            if (weatherId != null) {
+                weatherIds[count++] = weatherId;
+            }
+        }
+        WeatherArtCache.getInstance(context).prefetch(Arrays.copyOf(weatherIds, count),
+                context.getResources().getDimensionPixelSize(R.dimen.list_icon));
+    }
+
+    private static void updateWidgets(Context context) {
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
                 .setPackage(context.getPackageName());
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    private static void updateMuzei(Context context) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
-            Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
         }
     }
 
-    private void updateWearable() {
-
-        Context context = getContext();
+    private static void updateWearable(Context context) {
         context.startService(new Intent(ACTION_DATA_UPDATED)
                 .setClass(context, DataWearableService.class));
     }
@@ -456,18 +481,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
                     // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    Bitmap largeIcon = WeatherArtCache.getInstance(context).get(artUrl,
+                            artResourceId, largeIconWidth, largeIconHeight,
+                            WeatherArtCache.TRANSFORM_FIT_CENTER);
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -568,6 +584,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         return locationId;
     }
 
+    /**
+     * Records that the location's forecast was just fetched, and when it will be due again.
+     */
+    private void updateFreshness(long locationId) {
+        long now = System.currentTimeMillis();
+        ContentValues freshnessValues = new ContentValues();
+        freshnessValues.put(WeatherContract.LocationEntry.COLUMN_FETCHED_AT, now);
+        freshnessValues.put(WeatherContract.LocationEntry.COLUMN_EXPIRES_AT, now + DATA_TTL_MILLIS);
+        getContext().getContentResolver().update(WeatherContract.LocationEntry.CONTENT_URI,
+                freshnessValues,
+                WeatherContract.LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+    }
+
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -600,6 +630,22 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to ask for a sync that the system can run whenever it suits, for refreshing
+     * data that has expired but is still being shown.  Unlike {@link #syncImmediately} this
+     * respects the sync settings and backoff.
+     *
+     * @param context The context used to access the account service
+     */
+    public static void requestRefresh(Context context) {
+        Account account = getSyncAccount(context);
+        if (account == null) {
+            return;
+        }
+        ContentResolver.requestSync(account, context.getString(R.string.content_authority),
+                new Bundle());
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
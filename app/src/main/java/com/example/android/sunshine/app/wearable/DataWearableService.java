@@ -2,24 +2,26 @@ package com.example.android.sunshine.app.wearable;
 
 import android.app.IntentService;
 import android.content.Intent;
+import android.content.SharedPreferences;
 
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.text.format.Time;
 import android.util.Log;
 
 
-import com.bumptech.glide.Glide;
+import com.example.ForecastCodec;
+import com.example.ForecastRecord;
 import com.example.WatchFaceUtil;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
@@ -27,8 +29,12 @@ import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.util.concurrent.ExecutionException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static com.example.android.sunshine.app.sync.SunshineSyncAdapter.ACTION_DATA_UPDATED;
 
@@ -42,7 +48,8 @@ public class DataWearableService extends IntentService implements
             WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
             WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
             WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherContract.WeatherEntry.COLUMN_DATE
     };
 
     // these indices must match the projection
@@ -50,6 +57,25 @@ public class DataWearableService extends IntentService implements
     private static final int INDEX_MAX_TEMP = 1;
     private static final int INDEX_MIN_TEMP = 2;
     private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_DATE = 4;
+
+    // How many days, starting with today, the watch keeps a forecast for
+    private static final int FORECAST_DAYS = 7;
+
+    public static final String EXTRA_FORCE = "force";
+
+    // What was last pushed successfully, to only send what changed
+    private static final String SYNC_STATE_PREFS = "wearable_sync";
+    private static final String STATE_IMAGE_URL = "image_url";
+    private static final String STATE_IMAGE_HASH = "image_hash";
+    private static final String STATE_WEATHER_ID = "weather_id";
+    private static final String STATE_HIGH = "high";
+    private static final String STATE_LOW = "low";
+    private static final String STATE_RECORD_IMAGE_HASH = "record_image_hash";
+    private static final String STATE_FORECAST_HASH = "forecast_hash";
+
+    private static final int JPEG_QUALITY = 90;
+    private static final long PUT_TIMEOUT_SECONDS = 30;
 
     public DataWearableService() {
         super("DataWearableService");
@@ -80,86 +106,155 @@ public class DataWearableService extends IntentService implements
             if (ACTION_DATA_UPDATED.equals(action)) {
                 mGoogleApiClient.blockingConnect();
                 if (mGoogleApiClient.isConnected()){
-                    updateDataMap();
+                    updateDataMap(intent.getBooleanExtra(EXTRA_FORCE, false));
                 }
             }
         }
     }
 
-    private void updateDataMap() {
+    /**
+     * Pushes today's weather to the wearable, as a small record plus a separate image item that
+     * the record refers to by content hash.  Only the items whose content changed since the last
+     * successful push are sent, and only changes the watch face shows prominently are urgent.
+     *
+     * @param force whether to send both items even if they haven't changed, for when the watch
+     *              asks for them
+     */
+    private void updateDataMap(boolean force) {
         String locationQuery = Utility.getPreferredLocation(this);
 
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
+        Uri weatherUri = WeatherContract.buildRevalidatingUri(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        locationQuery, System.currentTimeMillis()));
 
-        Cursor cursor = getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-            String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
-            if (imageUrl != null) {
-                Bitmap largeIcon;
-                try {
-                    largeIcon = Glide.with(this)
-                            .load(imageUrl)
-                            .asBitmap()
-                            .error(artResourceId)
-                            .centerCrop()
-                            .into(320, 320)
-                            .get();
-                } catch (InterruptedException | ExecutionException e) {
-                    Log.e(LOG_TAG, "Error retrieving large icon from " + imageUrl, e);
-                    largeIcon = BitmapFactory.decodeResource(getResources(), artResourceId);
+        Cursor cursor = getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return;
+        }
+        if (!cursor.moveToFirst()) {
+            cursor.close();
+            return;
+        }
+        int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+        double high = cursor.getDouble(INDEX_MAX_TEMP);
+        double low = cursor.getDouble(INDEX_MIN_TEMP);
+        byte[] forecast = ForecastCodec.encode(readForecast(cursor));
+        cursor.close();
+        String forecastHash = hash(forecast);
+
+        String imageUrl = Utility.getImageUrlForWeatherCondition(weatherId);
+        if (imageUrl == null) {
+            return;
+        }
+        SharedPreferences state = getSharedPreferences(SYNC_STATE_PREFS, MODE_PRIVATE);
+
+        // The image only needs encoding and hashing again when its source changes
+        String imageHash = state.getString(STATE_IMAGE_HASH, null);
+        if (force || imageHash == null || !imageUrl.equals(state.getString(STATE_IMAGE_URL, null))) {
+            Bitmap largeIcon = WeatherArtCache.getInstance(this).getPhoto(weatherId,
+                    WeatherArtCache.WEARABLE_PHOTO_SIZE, WeatherArtCache.WEARABLE_PHOTO_SIZE,
+                    WeatherArtCache.TRANSFORM_CENTER_CROP);
+            if (largeIcon == null) {
+                return;
+            }
+            byte[] imageBytes = toJpeg(largeIcon);
+            String newImageHash = hash(imageBytes);
+            if (force || !newImageHash.equals(imageHash)) {
+                PutDataMapRequest imageMap = PutDataMapRequest.create(WatchFaceUtil.SUNSHINE_IMAGE_PATH);
+                imageMap.getDataMap().putString(WatchFaceUtil.IMAGE_HASH, newImageHash);
+                imageMap.getDataMap().putAsset(WatchFaceUtil.WEATHER_ICON,
+                        Asset.createFromBytes(imageBytes));
+                // The record that refers to the image decides whether to wake the watch
+                if (!putDataItem(imageMap.asPutDataRequest())) {
+                    return;
                 }
-                PutDataMapRequest dataMap = PutDataMapRequest.create(WatchFaceUtil.SUNSHINE_PATH);
-                dataMap.getDataMap().putDouble(WatchFaceUtil.TEMP_HIGH, high);
-                dataMap.getDataMap().putDouble(WatchFaceUtil.TEMP_LOW, low);
-                dataMap.getDataMap().putString(WatchFaceUtil.WEATHER_DESC, Utility.getStringForWeatherCondition(this, weatherId));
-                dataMap.getDataMap().putAsset(WatchFaceUtil.WEATHER_ICON, toAsset(largeIcon));
-                dataMap.getDataMap().putLong("Time",System.currentTimeMillis());
-                PutDataRequest request = dataMap.asPutDataRequest();
-                request.setUrgent();
-                Log.d(LOG_TAG, "Sending Data");
-                Wearable.DataApi.putDataItem(mGoogleApiClient, request)
-                        .setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-                            @Override
-                            public void onResult(@NonNull DataApi.DataItemResult dataItemResult) {
-                                Log.d(LOG_TAG, "Send result successful: " + dataItemResult.getStatus().isSuccess());
-                            }
-                        });
             }
+            imageHash = newImageHash;
+            state.edit()
+                    .putString(STATE_IMAGE_URL, imageUrl)
+                    .putString(STATE_IMAGE_HASH, imageHash)
+                    .apply();
+        }
 
+        boolean conditionChanged = weatherId != state.getInt(STATE_WEATHER_ID, -1);
+        // The watch face shows whole degrees, so smaller changes aren't worth waking it for
+        boolean temperatureChanged = Math.round(high) != state.getLong(STATE_HIGH, Long.MIN_VALUE)
+                || Math.round(low) != state.getLong(STATE_LOW, Long.MIN_VALUE);
+        // Today's condition and temperatures are part of the forecast
+        boolean recordChanged = !imageHash.equals(state.getString(STATE_RECORD_IMAGE_HASH, null))
+                || !forecastHash.equals(state.getString(STATE_FORECAST_HASH, null));
+        if (!force && !recordChanged) {
+            Log.d(LOG_TAG, "Wearable data unchanged");
+            return;
         }
-        cursor.close();
+
+        PutDataMapRequest dataMap = PutDataMapRequest.create(WatchFaceUtil.SUNSHINE_PATH);
+        dataMap.getDataMap().putString(WatchFaceUtil.IMAGE_HASH, imageHash);
+        dataMap.getDataMap().putByteArray(WatchFaceUtil.FORECAST, forecast);
+        // Lets the watch measure how long the data takes to reach the screen
+        dataMap.getDataMap().putLong(WatchFaceUtil.SENT_TIME, System.currentTimeMillis());
+        PutDataRequest request = dataMap.asPutDataRequest();
+        if (force || conditionChanged || temperatureChanged) {
+            request.setUrgent();
+        }
+        if (putDataItem(request)) {
+            state.edit()
+                    .putInt(STATE_WEATHER_ID, weatherId)
+                    .putLong(STATE_HIGH, Math.round(high))
+                    .putLong(STATE_LOW, Math.round(low))
+                    .putString(STATE_RECORD_IMAGE_HASH, imageHash)
+                    .putString(STATE_FORECAST_HASH, forecastHash)
+                    .apply();
+        }
+    }
+
+    /**
+     * Reads the upcoming days from the cursor, starting at its current row.
+     */
+    private ForecastRecord readForecast(Cursor cursor) {
+        List<ForecastRecord.Day> days = new ArrayList<>(FORECAST_DAYS);
+        Time time = new Time();
+        do {
+            long date = cursor.getLong(INDEX_DATE);
+            time.set(date);
+            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
+            days.add(new ForecastRecord.Day(Time.getJulianDay(date, time.gmtoff), weatherId,
+                    cursor.getDouble(INDEX_MAX_TEMP), cursor.getDouble(INDEX_MIN_TEMP)));
+        } while (days.size() < FORECAST_DAYS && cursor.moveToNext());
+        return new ForecastRecord(days);
+    }
+
+    private boolean putDataItem(PutDataRequest request) {
+        Log.d(LOG_TAG, "Sending " + request.getUri().getPath());
+        DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient, request)
+                .await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        Log.d(LOG_TAG, "Send result successful: " + result.getStatus().isSuccess());
+        return result.getStatus().isSuccess();
     }
 
     /**
-     * Builds an {@link com.google.android.gms.wearable.Asset} from a bitmap. The image that we get
-     * back from the camera in "data" is a thumbnail size. Typically, your image should not exceed
-     * 320x320 and if you want to have zoom and parallax effect in your app, limit the size of your
-     * image to 640x400. Resize your image before transferring to your wearable device.
+     * Encodes an image for the wearable. Typically, your image should not exceed 320x320 and if
+     * you want to have zoom and parallax effect in your app, limit the size of your image to
+     * 640x400. Resize your image before transferring to your wearable device.
      */
-    private static Asset toAsset(Bitmap bitmap) {
-        ByteArrayOutputStream byteStream = null;
+    private static byte[] toJpeg(Bitmap bitmap) {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, byteStream);
+        return byteStream.toByteArray();
+    }
+
+    private static String hash(byte[] bytes) {
         try {
-            byteStream = new ByteArrayOutputStream();
-            //bitmap = Bitmap.createScaledBitmap(bitmap, 320, 320, false);
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, byteStream);
-
-            final ByteArrayOutputStream baos = new
-                    ByteArrayOutputStream();
-
-            return Asset.createFromBytes(byteStream.toByteArray());
-        } finally {
-            if (null != byteStream) {
-                try {
-                    byteStream.close();
-                } catch (IOException e) {
-                    // ignore
-                }
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(b & 0xf, 16));
             }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(Arrays.hashCode(bytes));
         }
     }
 
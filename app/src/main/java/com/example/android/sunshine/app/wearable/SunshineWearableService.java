@@ -20,7 +20,10 @@ public class SunshineWearableService extends WearableListenerService {
     public void onMessageReceived(MessageEvent messageEvent) {
         super.onMessageReceived(messageEvent);
         if (messageEvent.getPath().equals(WatchFaceUtil.INIT_SUNSHINE_PATH)){
-            startService(new Intent(this, DataWearableService.class).setAction(SunshineSyncAdapter.ACTION_DATA_UPDATED));
+            // The watch is asking for the data, so send it even if we think it already has it
+            startService(new Intent(this, DataWearableService.class)
+                    .setAction(SunshineSyncAdapter.ACTION_DATA_UPDATED)
+                    .putExtra(DataWearableService.EXTRA_FORCE, true));
         }
     }
 }
@@ -7,19 +7,16 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
-import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.art.WeatherArtCache;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
-
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
  */
@@ -46,6 +43,8 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
             private Cursor data = null;
+            // Icons pre-scaled to the row's icon size, keyed by weather condition id
+            private final SparseArray<Bitmap> thumbnails = new SparseArray<>();
 
             @Override
             public void onCreate() {
@@ -63,14 +62,40 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherForLocationUri = WeatherContract.WeatherEntry
-                        .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
+                Uri weatherForLocationUri = WeatherContract.buildRevalidatingUri(
+                        WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                                location, System.currentTimeMillis()));
                 data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+                loadThumbnails();
+            }
+
+            /**
+             * Renders the weather art for every condition in the data set at the size the rows
+             * display it, so that getViewAt only has to look it up.  This runs on the binder
+             * thread as part of onDataSetChanged, which the host expects to be slow.
+             */
+            private void loadThumbnails() {
+                thumbnails.clear();
+                if (data == null ||
+                        Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this)) {
+                    return;
+                }
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                WeatherArtCache artCache =
+                        WeatherArtCache.getInstance(DetailWidgetRemoteViewsService.this);
+                for (int i = 0; data.moveToPosition(i); i++) {
+                    int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    if (thumbnails.indexOfKey(weatherId) < 0) {
+                        // Keep misses as null so the row falls back to the bundled icon
+                        thumbnails.put(weatherId, artCache.getArt(weatherId, iconSize, iconSize,
+                                WeatherArtCache.TRANSFORM_FIT_CENTER));
+                    }
+                }
             }
 
             @Override
@@ -79,6 +104,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                     data.close();
                     data = null;
                 }
+                thumbnails.clear();
             }
 
             @Override
@@ -96,20 +122,7 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                         R.layout.widget_detail_list_item);
                 int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
                 int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
+                Bitmap weatherArtImage = thumbnails.get(weatherId);
                 String description = data.getString(INDEX_WEATHER_DESC);
                 long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
                 String formattedDate = Utility.getFriendlyDayString(
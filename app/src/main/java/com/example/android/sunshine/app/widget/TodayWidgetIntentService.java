@@ -16,16 +16,21 @@
 package com.example.android.sunshine.app.widget;
 
 import android.annotation.TargetApi;
+import android.app.AlarmManager;
 import android.app.IntentService;
 import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
 import android.util.TypedValue;
 import android.widget.RemoteViews;
 
@@ -34,6 +39,11 @@ import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * IntentService which handles updating all Today widgets with the latest data
  */
@@ -50,12 +60,22 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    // Set by a forced request until the render pass it was collapsed into picks it up
+    private static final AtomicBoolean sForcePending = new AtomicBoolean();
+    // Hash of the content and layout last pushed to each widget, for skipping no-op updates.
+    // Guarded by itself, since widgets are deleted on the main thread.
+    private static final SparseIntArray sPushedHashes = new SparseIntArray();
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
 
     @Override
     protected void onHandleIntent(Intent intent) {
+        boolean force = sForcePending.getAndSet(false);
+
         // Retrieve all of the Today widget ids: these are the widgets we need to update
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
@@ -63,8 +83,9 @@ public class TodayWidgetIntentService extends IntentService {
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
-        Uri weatherForLocationUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
-                location, System.currentTimeMillis());
+        Uri weatherForLocationUri = WeatherContract.buildRevalidatingUri(
+                WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                        location, System.currentTimeMillis()));
         Cursor data = getContentResolver().query(weatherForLocationUri, FORECAST_COLUMNS, null,
                 null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
         if (data == null) {
@@ -85,21 +106,35 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
+        int contentHash = Arrays.hashCode(new Object[] {weatherArtResourceId, description,
+                formattedMaxTemperature, formattedMinTemperature});
+
+        // Sort the widgets into layout buckets by width, leaving out the ones already showing
+        // this content in the right layout
+        SparseArray<List<Integer>> buckets = new SparseArray<>();
         for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
+            int layoutId = getLayoutForWidth(getWidgetWidth(appWidgetManager, appWidgetId));
+            if (!force && getPushedHash(appWidgetId) == getWidgetHash(contentHash, layoutId)) {
+                continue;
+            }
+            List<Integer> bucket = buckets.get(layoutId);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(layoutId, bucket);
             }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
+            bucket.add(appWidgetId);
+        }
+        if (buckets.size() == 0) {
+            return;
+        }
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(this, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
+
+        // Build the views once per layout and push them to every widget in that bucket
+        for (int i = 0; i < buckets.size(); i++) {
+            RemoteViews views = new RemoteViews(getPackageName(), buckets.keyAt(i));
 
             // Add the data to the RemoteViews
             views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
@@ -110,14 +145,78 @@ public class TodayWidgetIntentService extends IntentService {
             views.setTextViewText(R.id.widget_description, description);
             views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
             views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
             views.setOnClickPendingIntent(R.id.widget, pendingIntent);
 
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+            // Tell the AppWidgetManager to perform an update on the widgets in this bucket
+            List<Integer> bucket = buckets.valueAt(i);
+            int[] bucketIds = new int[bucket.size()];
+            for (int j = 0; j < bucketIds.length; j++) {
+                bucketIds[j] = bucket.get(j);
+            }
+            appWidgetManager.updateAppWidget(bucketIds, views);
+
+            // Only now are these widgets known to be showing this content
+            int widgetHash = getWidgetHash(contentHash, buckets.keyAt(i));
+            synchronized (sPushedHashes) {
+                for (int appWidgetId : bucketIds) {
+                    sPushedHashes.put(appWidgetId, widgetHash);
+                }
+            }
+        }
+    }
+
+    private static int getWidgetHash(int contentHash, int layoutId) {
+        return 31 * contentHash + layoutId;
+    }
+
+    private static int getPushedHash(int appWidgetId) {
+        synchronized (sPushedHashes) {
+            return sPushedHashes.get(appWidgetId, 0);
+        }
+    }
+
+    /**
+     * Forgets what was pushed to widgets that have been deleted, so that the ids don't pile up
+     * and a widget that reuses one is always sent its views.
+     */
+    static void forgetWidgets(int[] appWidgetIds) {
+        synchronized (sPushedHashes) {
+            for (int appWidgetId : appWidgetIds) {
+                sPushedHashes.delete(appWidgetId);
+            }
+        }
+    }
+
+    /**
+     * Asks the service to refresh the Today widgets.  Requests made in quick succession are
+     * collapsed into a single render pass: each one replaces the alarm set by the one before,
+     * so the service only starts once a burst has settled, and is never busy with one that
+     * has gone stale.
+     *
+     * @param force whether to push the views even to widgets already showing the same content,
+     *              for when the host may have lost them
+     */
+    public static void requestUpdate(Context context, boolean force) {
+        if (force) {
+            sForcePending.set(true);
+        }
+        PendingIntent updateIntent = PendingIntent.getService(context, 0,
+                new Intent(context, TodayWidgetIntentService.class),
+                PendingIntent.FLAG_UPDATE_CURRENT);
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        alarmManager.set(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + DEBOUNCE_MILLIS, updateIntent);
+    }
+
+    private int getLayoutForWidth(int widgetWidth) {
+        int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        if (widgetWidth >= largeWidth) {
+            return R.layout.widget_today_large;
+        } else if (widgetWidth >= defaultWidth) {
+            return R.layout.widget_today;
+        } else {
+            return R.layout.widget_today_small;
         }
     }
 
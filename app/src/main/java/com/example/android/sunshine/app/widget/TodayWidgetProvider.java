@@ -34,20 +34,26 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host is asking for the views, so push them even if nothing has changed
+        TodayWidgetIntentService.requestUpdate(context, true);
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        TodayWidgetIntentService.requestUpdate(context, false);
+    }
+
+    @Override
+    public void onDeleted(Context context, int[] appWidgetIds) {
+        TodayWidgetIntentService.forgetWidgets(appWidgetIds);
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            TodayWidgetIntentService.requestUpdate(context, false);
         }
     }
 }
@@ -0,0 +1,138 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link ForecastCodec} with sending the forecast as keyed, loosely typed fields the
+ * way the DataMap payload used to be assembled.  DataMap itself is part of Play services and
+ * isn't available on the JVM, so the keyed encoding below stands in for it: every field is
+ * written with its key and a type tag, and the temperatures as doubles with a description
+ * string, as DataMap does.
+ *
+ * Run with {@code ./gradlew :lib:jmh}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ForecastCodecBenchmark {
+    private static final byte TYPE_INT = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_STRING = 3;
+
+    @Param({"1", "7", "14"})
+    public int days;
+
+    private ForecastRecord mRecord;
+    private byte[] mCodecPayload;
+    private byte[] mKeyedPayload;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<ForecastRecord.Day> list = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            list.add(new ForecastRecord.Day(2457024 + i, 800 + i, 21.5 + i, 12.5 - i));
+        }
+        mRecord = new ForecastRecord(list);
+        mCodecPayload = ForecastCodec.encode(mRecord);
+        mKeyedPayload = encodeKeyed(mRecord);
+        System.out.println("Payload bytes for " + days + " days: codec " + mCodecPayload.length
+                + ", keyed " + mKeyedPayload.length);
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return ForecastCodec.encode(mRecord);
+    }
+
+    @Benchmark
+    public ForecastRecord decodeCodec() throws IOException {
+        return ForecastCodec.decode(mCodecPayload);
+    }
+
+    @Benchmark
+    public byte[] encodeKeyed() throws IOException {
+        return encodeKeyed(mRecord);
+    }
+
+    @Benchmark
+    public ForecastRecord decodeKeyed() throws IOException {
+        return decodeKeyed(mKeyedPayload);
+    }
+
+    private static byte[] encodeKeyed(ForecastRecord record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        List<ForecastRecord.Day> list = record.getDays();
+        writeInt(out, "count", list.size());
+        for (int i = 0; i < list.size(); i++) {
+            ForecastRecord.Day day = list.get(i);
+            writeInt(out, "julian_day_" + i, day.getJulianDay());
+            writeInt(out, "weather_id_" + i, day.getWeatherId());
+            writeDouble(out, "temp_high_" + i, day.getHigh());
+            writeDouble(out, "temp_low_" + i, day.getLow());
+            out.writeUTF("weather_desc_" + i);
+            out.writeByte(TYPE_STRING);
+            out.writeUTF("Clear");
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeInt(DataOutputStream out, String key, int value) throws IOException {
+        out.writeUTF(key);
+        out.writeByte(TYPE_INT);
+        out.writeInt(value);
+    }
+
+    private static void writeDouble(DataOutputStream out, String key, double value)
+            throws IOException {
+        out.writeUTF(key);
+        out.writeByte(TYPE_DOUBLE);
+        out.writeDouble(value);
+    }
+
+    private static ForecastRecord decodeKeyed(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int count = readInt(in);
+        List<ForecastRecord.Day> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int julianDay = readInt(in);
+            int weatherId = readInt(in);
+            double high = readDouble(in);
+            double low = readDouble(in);
+            in.readUTF();
+            in.readByte();
+            in.readUTF();
+            list.add(new ForecastRecord.Day(julianDay, weatherId, high, low));
+        }
+        return new ForecastRecord(list);
+    }
+
+    private static int readInt(DataInputStream in) throws IOException {
+        in.readUTF();
+        in.readByte();
+        return in.readInt();
+    }
+
+    private static double readDouble(DataInputStream in) throws IOException {
+        in.readUTF();
+        in.readByte();
+        return in.readDouble();
+    }
+}
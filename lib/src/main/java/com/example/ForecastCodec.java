@@ -0,0 +1,127 @@
+package com.example;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of the {@link ForecastRecord} shared between the phone and the watch.  Every
+ * payload starts with its schema version, so that either side can tell a record it doesn't
+ * understand from a corrupt one.
+ *
+ * Version 2 is a fixed layout, big endian:
+ * <pre>
+ *   byte    version
+ *   byte    number of days
+ *   per day:
+ *     int   Julian day
+ *     short OpenWeatherMap condition code
+ *     short high, in tenths of a degree
+ *     short low, in tenths of a degree
+ * </pre>
+ * Descriptions aren't sent; each side looks up its own localized text for the condition code.
+ * Version 1 payloads, which carried doubles and a description per day, can still be decoded.
+ */
+public class ForecastCodec {
+    public static final int VERSION = 2;
+
+    private static final int VERSION_1 = 1;
+
+    static final int HEADER_SIZE = 2;
+    static final int DAY_SIZE = 4 + 2 + 2 + 2;
+
+    // The number of days is stored in a byte
+    private static final int MAX_DAYS = 255;
+
+    // Temperatures are sent in tenths of a degree
+    private static final double TEMPERATURE_SCALE = 10;
+
+    private ForecastCodec() {
+    }
+
+    public static byte[] encode(ForecastRecord record) {
+        List<ForecastRecord.Day> days = record.getDays();
+        if (days.size() > MAX_DAYS) {
+            throw new IllegalArgumentException("Too many days: " + days.size());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + days.size() * DAY_SIZE);
+        buffer.put((byte) VERSION);
+        buffer.put((byte) days.size());
+        for (ForecastRecord.Day day : days) {
+            buffer.putInt(day.getJulianDay());
+            buffer.putShort(toShort(day.getWeatherId()));
+            buffer.putShort(toShort(Math.round(day.getHigh() * TEMPERATURE_SCALE)));
+            buffer.putShort(toShort(Math.round(day.getLow() * TEMPERATURE_SCALE)));
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @throws IOException if the payload is truncated or of an unknown version
+     */
+    public static ForecastRecord decode(byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            throw new IOException("Empty forecast");
+        }
+        int version = payload[0] & 0xff;
+        switch (version) {
+            case VERSION:
+                return decodeVersion2(payload);
+            case VERSION_1:
+                return decodeVersion1(payload);
+            default:
+                throw new IOException("Unsupported forecast version " + version);
+        }
+    }
+
+    private static ForecastRecord decodeVersion2(byte[] payload) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        buffer.position(1);
+        try {
+            int count = buffer.get() & 0xff;
+            if (buffer.remaining() != count * DAY_SIZE) {
+                throw new IOException("Forecast of " + count + " days is " + payload.length
+                        + " bytes long");
+            }
+            List<ForecastRecord.Day> days = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int julianDay = buffer.getInt();
+                int weatherId = buffer.getShort();
+                double high = buffer.getShort() / TEMPERATURE_SCALE;
+                double low = buffer.getShort() / TEMPERATURE_SCALE;
+                days.add(new ForecastRecord.Day(julianDay, weatherId, high, low));
+            }
+            return new ForecastRecord(days);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated forecast", e);
+        }
+    }
+
+    private static ForecastRecord decodeVersion1(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        in.skipBytes(1);
+        int count = in.readUnsignedByte();
+        List<ForecastRecord.Day> days = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int julianDay = in.readInt();
+            int weatherId = in.readInt();
+            double high = in.readDouble();
+            double low = in.readDouble();
+            // The description is looked up from the condition code now
+            in.readUTF();
+            days.add(new ForecastRecord.Day(julianDay, weatherId, high, low));
+        }
+        return new ForecastRecord(days);
+    }
+
+    private static short toShort(long value) {
+        if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Value out of range: " + value);
+        }
+        return (short) value;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The forecast the phone shares with the watch: one entry per day, starting with today.
+ */
+public class ForecastRecord {
+    private final List<Day> mDays;
+
+    public ForecastRecord(List<Day> days) {
+        mDays = Collections.unmodifiableList(new ArrayList<>(days));
+    }
+
+    public List<Day> getDays() {
+        return mDays;
+    }
+
+    /**
+     * Returns the forecast for the given Julian day, or null if the record doesn't cover it.
+     */
+    public Day getDay(int julianDay) {
+        for (Day day : mDays) {
+            if (day.getJulianDay() == julianDay) {
+                return day;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof ForecastRecord && mDays.equals(((ForecastRecord) o).mDays);
+    }
+
+    @Override
+    public int hashCode() {
+        return mDays.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastRecord" + mDays;
+    }
+
+    public static class Day {
+        private final int mJulianDay;
+        private final int mWeatherId;
+        private final double mHigh;
+        private final double mLow;
+
+        public Day(int julianDay, int weatherId, double high, double low) {
+            mJulianDay = julianDay;
+            mWeatherId = weatherId;
+            mHigh = high;
+            mLow = low;
+        }
+
+        public int getJulianDay() {
+            return mJulianDay;
+        }
+
+        public int getWeatherId() {
+            return mWeatherId;
+        }
+
+        public double getHigh() {
+            return mHigh;
+        }
+
+        public double getLow() {
+            return mLow;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Day)) {
+                return false;
+            }
+            Day day = (Day) o;
+            return mJulianDay == day.mJulianDay
+                    && mWeatherId == day.mWeatherId
+                    && Double.compare(mHigh, day.mHigh) == 0
+                    && Double.compare(mLow, day.mLow) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = mJulianDay;
+            result = 31 * result + mWeatherId;
+            long temp = Double.doubleToLongBits(mHigh);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            temp = Double.doubleToLongBits(mLow);
+            result = 31 * result + (int) (temp ^ (temp >>> 32));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "{" + mJulianDay + ": " + mWeatherId + " " + mHigh + "/" + mLow + "}";
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.example;
+
+/**
+ * A fixed size histogram of non-negative values with power of two buckets: bucket 0 holds 0,
+ * and bucket i holds values from 2^(i-1) up to 2^i - 1.  Recording a value doesn't allocate,
+ * so it can be done on every frame.  Not thread safe.
+ */
+public class Histogram {
+    private static final int BUCKETS = 64;
+
+    private final String mUnit;
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mSum;
+    private long mMax;
+
+    /**
+     * @param unit the unit of the recorded values, for printing
+     */
+    public Histogram(String unit) {
+        mUnit = unit;
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[bucketOf(value)]++;
+        mCount++;
+        mSum += value;
+        if (value > mMax) {
+            mMax = value;
+        }
+    }
+
+    public static int bucketOf(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * @return the largest value bucket i can hold
+     */
+    public static long upperBound(int bucket) {
+        return bucket == 0 ? 0 : bucket == 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+    }
+
+    public long getCount() {
+        return mCount;
+    }
+
+    public long getMax() {
+        return mMax;
+    }
+
+    public long getMean() {
+        return mCount == 0 ? 0 : mSum / mCount;
+    }
+
+    /**
+     * @param percent between 0 and 100
+     * @return an upper bound for the percentile, never more than the largest value recorded
+     */
+    public long getPercentile(double percent) {
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(mCount * percent / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += mCounts[i];
+            if (seen >= rank && seen > 0) {
+                return Math.min(upperBound(i), mMax);
+            }
+        }
+        return mMax;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mSum = 0;
+        mMax = 0;
+    }
+
+    /**
+     * @return a one line summary, e.g. {@code n=120 avg=850us p50<=1023us p90<=2047us p99<=4095us
+     * max=3120us}
+     */
+    @Override
+    public String toString() {
+        if (mCount == 0) {
+            return "n=0";
+        }
+        return "n=" + mCount
+                + " avg=" + getMean() + mUnit
+                + " p50<=" + getPercentile(50) + mUnit
+                + " p90<=" + getPercentile(90) + mUnit
+                + " p99<=" + getPercentile(99) + mUnit
+                + " max=" + mMax + mUnit;
+    }
+
+    /**
+     * @return the non-empty buckets, as {@code <=upper bound: count} pairs
+     */
+    public String bucketsToString() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (mCounts[i] == 0) {
+                continue;
+            }
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append("<=").append(upperBound(i)).append(mUnit).append(": ").append(mCounts[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -6,9 +6,14 @@ package com.example;
 
 public class WatchFaceUtil {
     public static final String SUNSHINE_PATH = "/sunshine";
+    public static final String SUNSHINE_IMAGE_PATH = "/sunshine/image";
     public static final String INIT_SUNSHINE_PATH = "/init-sunshine";
-    public static final String TEMP_HIGH = "temp_high";
-    public static final String TEMP_LOW = "temp_low";
+    // Advertised by the phone app in res/values/wear.xml
+    public static final String SUNSHINE_CAPABILITY = "sunshine_weather_data";
     public static final String WEATHER_ICON = "weather_icon";
-    public static String WEATHER_DESC = "weather_desc";
+    public static final String IMAGE_HASH = "image_hash";
+    // The ForecastCodec payload of the upcoming days
+    public static final String FORECAST = "forecast";
+    // When the phone sent the record, in milliseconds since the epoch
+    public static final String SENT_TIME = "sent_time";
 }
@@ -0,0 +1,97 @@
+package com.example;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ForecastCodecTest {
+    private static final int TEST_JULIAN_DAY = 2457024;
+
+    static ForecastRecord createForecast(int days) {
+        List<ForecastRecord.Day> list = new ArrayList<>(days);
+        for (int i = 0; i < days; i++) {
+            list.add(new ForecastRecord.Day(TEST_JULIAN_DAY + i, 800 + i, 21.5 + i, -3.2 - i));
+        }
+        return new ForecastRecord(list);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        ForecastRecord record = createForecast(14);
+        byte[] payload = ForecastCodec.encode(record);
+        assertEquals(ForecastCodec.VERSION, payload[0]);
+        assertEquals(ForecastCodec.HEADER_SIZE + 14 * ForecastCodec.DAY_SIZE, payload.length);
+        assertEquals(record, ForecastCodec.decode(payload));
+    }
+
+    @Test
+    public void testEmptyForecast() throws IOException {
+        ForecastRecord record = new ForecastRecord(Collections.<ForecastRecord.Day>emptyList());
+        assertEquals(record, ForecastCodec.decode(ForecastCodec.encode(record)));
+    }
+
+    @Test
+    public void testTemperaturesRoundToTenths() throws IOException {
+        ForecastRecord record = new ForecastRecord(Arrays.asList(
+                new ForecastRecord.Day(TEST_JULIAN_DAY, 500, 12.34, -0.06)));
+        ForecastRecord.Day day = ForecastCodec.decode(ForecastCodec.encode(record)).getDays().get(0);
+        assertEquals(12.3, day.getHigh(), 0);
+        assertEquals(-0.1, day.getLow(), 0);
+    }
+
+    @Test
+    public void testDecodesVersion1() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(1);
+        out.writeByte(1);
+        out.writeInt(TEST_JULIAN_DAY);
+        out.writeInt(321);
+        out.writeDouble(75);
+        out.writeDouble(65);
+        out.writeUTF("Drizzle");
+
+        ForecastRecord record = ForecastCodec.decode(bytes.toByteArray());
+        assertEquals(new ForecastRecord(Arrays.asList(
+                new ForecastRecord.Day(TEST_JULIAN_DAY, 321, 75, 65))), record);
+    }
+
+    @Test
+    public void testRejectsUnknownVersion() {
+        byte[] payload = ForecastCodec.encode(createForecast(1));
+        payload[0] = (byte) (ForecastCodec.VERSION + 1);
+        assertDecodeFails(payload);
+    }
+
+    @Test
+    public void testRejectsTruncatedPayload() {
+        byte[] payload = ForecastCodec.encode(createForecast(3));
+        assertDecodeFails(Arrays.copyOf(payload, payload.length - 1));
+        assertDecodeFails(Arrays.copyOf(payload, 1));
+        assertDecodeFails(new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectsOutOfRangeTemperature() {
+        ForecastCodec.encode(new ForecastRecord(Arrays.asList(
+                new ForecastRecord.Day(TEST_JULIAN_DAY, 800, 5000, 0))));
+    }
+
+    private static void assertDecodeFails(byte[] payload) {
+        try {
+            ForecastCodec.decode(payload);
+            fail("Decoding " + Arrays.toString(payload) + " should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.example;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HistogramTest {
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, Histogram.bucketOf(0));
+        assertEquals(1, Histogram.bucketOf(1));
+        assertEquals(2, Histogram.bucketOf(2));
+        assertEquals(2, Histogram.bucketOf(3));
+        assertEquals(11, Histogram.bucketOf(1024));
+        assertEquals(1023, Histogram.upperBound(10));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testStatistics() {
+        Histogram histogram = new Histogram("us");
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(50, histogram.getMean());
+        assertEquals(100, histogram.getMax());
+        // 50 falls in the 32..63 bucket, 90 and 99 in the 64..127 one, capped at the max
+        assertEquals(63, histogram.getPercentile(50));
+        assertEquals(100, histogram.getPercentile(90));
+        assertEquals(100, histogram.getPercentile(99));
+        assertEquals(1, histogram.getPercentile(1));
+    }
+
+    @Test
+    public void testNegativeValuesCountAsZero() {
+        Histogram histogram = new Histogram("ms");
+        histogram.record(-5);
+        assertEquals(0, histogram.getMax());
+        assertEquals("<=0ms: 1", histogram.bucketsToString());
+    }
+
+    @Test
+    public void testReset() {
+        Histogram histogram = new Histogram("ms");
+        histogram.record(10);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals("n=0", histogram.toString());
+        assertEquals("", histogram.bucketsToString());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.sunshine.app;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Holds the formatted date shown on the watch face, formatting it again only when the day
+ * rolls over.
+ */
+class DateText {
+    private final SimpleDateFormat mFormat;
+    private final Date mDate = new Date();
+    private String mText = "";
+
+    private int mYear = -1;
+    private int mDayOfYear = -1;
+
+    DateText(String pattern, Locale locale) {
+        mFormat = new SimpleDateFormat(pattern, locale);
+    }
+
+    /**
+     * Updates the text for the given day.
+     *
+     * @param timeInMillis any time within the day, used for formatting it
+     * @return true if the text changed
+     */
+    boolean update(int year, int dayOfYear, long timeInMillis) {
+        if (year == mYear && dayOfYear == mDayOfYear) {
+            return false;
+        }
+        mYear = year;
+        mDayOfYear = dayOfYear;
+        mDate.setTime(timeInMillis);
+        mText = mFormat.format(mDate);
+        return true;
+    }
+
+    /**
+     * Switches to the given time zone, formatting the text again on the next update.
+     */
+    void setTimeZone(TimeZone timeZone) {
+        mFormat.setTimeZone(timeZone);
+        mYear = -1;
+        mDayOfYear = -1;
+    }
+
+    String getText() {
+        return mText;
+    }
+}
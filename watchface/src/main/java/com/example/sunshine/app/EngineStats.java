@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.sunshine.app;
+
+import com.example.Histogram;
+
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects what the watch face costs on the wrist: its wakeups, how long frames take to draw in
+ * each mode, how long background decodes and data events take to handle, and how long new
+ * weather takes from the phone sending it to being on screen.  The numbers can be read with
+ * {@code adb shell dumpsys activity service com.example.sunshine.app.WatchFace}, and cleared by
+ * adding {@code --reset}.  Debug builds also log them when the top of the face is tapped.
+ */
+class EngineStats {
+    private long mStartTime = System.currentTimeMillis();
+    private long mWakeups;
+    private long mIdleWakeups;
+    private final Histogram mInteractiveFrameMicros = new Histogram("us");
+    private final Histogram mAmbientFrameMicros = new Histogram("us");
+    private final Histogram mDecodeMillis = new Histogram("ms");
+    private final Histogram mDataEventMicros = new Histogram("us");
+    private final Histogram mDataLatencyMillis = new Histogram("ms");
+
+    /**
+     * Records a timer wakeup, and whether it found anything to redraw.
+     */
+    synchronized void recordWakeup(boolean redraw) {
+        mWakeups++;
+        if (!redraw) {
+            mIdleWakeups++;
+        }
+    }
+
+    synchronized void recordFrame(boolean ambient, long frameNanos) {
+        (ambient ? mAmbientFrameMicros : mInteractiveFrameMicros)
+                .record(TimeUnit.NANOSECONDS.toMicros(frameNanos));
+    }
+
+    /**
+     * Records how long reading and decoding a background image took, off the UI thread.
+     */
+    synchronized void recordDecode(long decodeNanos) {
+        mDecodeMillis.record(TimeUnit.NANOSECONDS.toMillis(decodeNanos));
+    }
+
+    /**
+     * Records how long handling a batch of data events took on the UI thread.
+     */
+    synchronized void recordDataEvent(long handleNanos) {
+        mDataEventMicros.record(TimeUnit.NANOSECONDS.toMicros(handleNanos));
+    }
+
+    /**
+     * Records the time from the phone sending weather data to the first frame showing it.  The
+     * watch's clock is synced with the phone's, so this is good to within the sync accuracy.
+     */
+    synchronized void recordDataLatency(long latencyMillis) {
+        mDataLatencyMillis.record(latencyMillis);
+    }
+
+    synchronized void reset() {
+        mStartTime = System.currentTimeMillis();
+        mWakeups = 0;
+        mIdleWakeups = 0;
+        mInteractiveFrameMicros.reset();
+        mAmbientFrameMicros.reset();
+        mDecodeMillis.reset();
+        mDataEventMicros.reset();
+        mDataLatencyMillis.reset();
+    }
+
+    synchronized void dump(PrintWriter writer) {
+        long elapsedMillis = Math.max(1, System.currentTimeMillis() - mStartTime);
+        writer.println("Stats for the last " + TimeUnit.MILLISECONDS.toMinutes(elapsedMillis)
+                + " minutes");
+        writer.println("Wakeups: " + mWakeups + " (" + mIdleWakeups + " without a redraw), "
+                + (mWakeups * TimeUnit.HOURS.toMillis(1) / elapsedMillis) + " per hour");
+        dump(writer, "Interactive frames", mInteractiveFrameMicros);
+        dump(writer, "Ambient frames", mAmbientFrameMicros);
+        dump(writer, "Background decodes", mDecodeMillis);
+        dump(writer, "Data events", mDataEventMicros);
+        dump(writer, "Phone to screen", mDataLatencyMillis);
+    }
+
+    private static void dump(PrintWriter writer, String name, Histogram histogram) {
+        writer.println(name + ": " + histogram);
+        if (histogram.getCount() > 0) {
+            writer.println("  " + histogram.bucketsToString());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.sunshine.app;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.example.ForecastCodec;
+import com.example.ForecastRecord;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Keeps the last forecast received from the phone on the watch, so that the face can show it
+ * as soon as it starts instead of waiting for the phone.  The record is stored as the encoded
+ * payload it arrived as; it is well under a kilobyte.
+ */
+class ForecastStore {
+    private static final String LOG_TAG = ForecastStore.class.getSimpleName();
+    private static final String FILE_NAME = "forecast.bin";
+
+    private final File mFile;
+
+    ForecastStore(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * @return the stored forecast, or null if there is none or it can't be read
+     */
+    ForecastRecord load() {
+        if (!mFile.exists()) {
+            return null;
+        }
+        InputStream in = null;
+        try {
+            in = new FileInputStream(mFile);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) mFile.length());
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return ForecastCodec.decode(bytes.toByteArray());
+        } catch (IOException e) {
+            // Most likely written by an older version; the phone will send a new one
+            Log.w(LOG_TAG, "Discarding stored forecast", e);
+            mFile.delete();
+            return null;
+        } finally {
+            close(in);
+        }
+    }
+
+    /**
+     * Replaces the stored forecast with the encoded payload.
+     */
+    void save(byte[] payload) {
+        // Write to a temporary file first so that a crash can't leave a truncated record
+        File tmpFile = new File(mFile.getPath() + ".tmp");
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            out.write(payload);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(mFile)) {
+                Log.w(LOG_TAG, "Error replacing stored forecast");
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error storing forecast", e);
+        } finally {
+            close(out);
+            tmpFile.delete();
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.sunshine.app;
+
+/**
+ * Formats the time as H:MM or H:MM:SS into a reused char buffer, so that drawing the time
+ * every second doesn't allocate.  The buffer is only rewritten when one of the fields changes.
+ */
+class TimeText {
+    // Room for "HH:MM:SS"
+    private final char[] mChars = new char[8];
+    private int mLength;
+
+    private int mHour = -1;
+    private int mMinute = -1;
+    private int mSecond = -1;
+    private boolean mShowSeconds;
+
+    /**
+     * Updates the text for the given time.
+     *
+     * @param hour the hour, between 0 and 23
+     * @param showSeconds whether to include the seconds
+     * @return true if the text changed
+     */
+    boolean update(int hour, int minute, int second, boolean showSeconds) {
+        if (!showSeconds) {
+            second = -1;
+        }
+        if (hour == mHour && minute == mMinute && second == mSecond
+                && showSeconds == mShowSeconds) {
+            return false;
+        }
+        mHour = hour;
+        mMinute = minute;
+        mSecond = second;
+        mShowSeconds = showSeconds;
+
+        int length = 0;
+        if (hour >= 10) {
+            mChars[length++] = (char) ('0' + hour / 10);
+        }
+        mChars[length++] = (char) ('0' + hour % 10);
+        length = appendField(length, minute);
+        if (showSeconds) {
+            length = appendField(length, second);
+        }
+        mLength = length;
+        return true;
+    }
+
+    private int appendField(int length, int value) {
+        mChars[length++] = ':';
+        mChars[length++] = (char) ('0' + value / 10);
+        mChars[length++] = (char) ('0' + value % 10);
+        return length;
+    }
+
+    /**
+     * Returns the buffer holding the text.  Only the first {@link #length()} chars are valid.
+     */
+    char[] chars() {
+        return mChars;
+    }
+
+    int length() {
+        return mLength;
+    }
+
+    @Override
+    public String toString() {
+        return new String(mChars, 0, mLength);
+    }
+}
@@ -34,64 +34,119 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.preference.PreferenceManager;
 
 import android.support.annotation.NonNull;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
+import android.text.format.DateUtils;
+import android.text.format.Time;
+import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 import android.widget.Toast;
 
+import com.example.ForecastCodec;
+import com.example.ForecastRecord;
 import com.example.WatchFaceUtil;
+import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.R;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.CapabilityApi;
+import com.google.android.gms.wearable.CapabilityInfo;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Node;
-import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
+import java.util.HashSet;
 import java.util.Locale;
+import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode. Tapping the face
+ * hides or shows the seconds in interactive mode; with them hidden it only wakes once a minute.
  */
 public class WatchFace extends CanvasWatchFaceService {
     private static final Typeface NORMAL_TYPEFACE =
             Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
 
     /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
+     * Update rate in milliseconds for interactive mode when seconds are displayed.
      */
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
+    /**
+     * Update rate in milliseconds for interactive mode when seconds are hidden.
+     */
+    private static final long INTERACTIVE_NO_SECONDS_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final String PREF_SHOW_SECONDS = "show_seconds";
+
+    /**
+     * In debug builds, taps in the top 1/DEBUG_TAP_AREA_DIVISOR of the face log the engine stats.
+     */
+    private static final int DEBUG_TAP_AREA_DIVISOR = 5;
+
+    /**
+     * How long to wait for the phone to deliver the background asset.
+     */
+    private static final long ASSET_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
     /**
      * Handler message id for updating the time periodically in interactive mode.
      */
     private static final int MSG_UPDATE_TIME = 0;
     private static final String LOG_TAG = WatchFace.class.getSimpleName();
 
+    private final EngineStats mEngineStats = new EngineStats();
+
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        super.dump(fd, writer, args);
+        mEngineStats.dump(writer);
+        if (args != null && Arrays.asList(args).contains("--reset")) {
+            mEngineStats.reset();
+        }
+    }
+
+    /**
+     * Logs the engine stats, for debug builds where dumpsys is out of reach.
+     */
+    private void logStats() {
+        StringWriter stats = new StringWriter();
+        PrintWriter writer = new PrintWriter(stats);
+        mEngineStats.dump(writer);
+        writer.flush();
+        Log.i(LOG_TAG, stats.toString());
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<WatchFace.Engine> mWeakReference;
 
@@ -115,6 +170,7 @@ public class WatchFace extends CanvasWatchFaceService {
     private class Engine
             extends CanvasWatchFaceService.Engine
             implements DataApi.DataListener,
+            CapabilityApi.CapabilityListener,
             GoogleApiClient.ConnectionCallbacks,
             GoogleApiClient.OnConnectionFailedListener {
         GoogleApiClient mGoogleApiClient;
@@ -133,13 +189,17 @@ public class WatchFace extends CanvasWatchFaceService {
             @Override
             public void onReceive(Context context, Intent intent) {
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mDateText.setTimeZone(TimeZone.getDefault());
                 invalidate();
             }
         };
         float mXOffset;
         float mYOffset;
 
+        // Whether we still have no forecast for today and need to ask the phone for one
         boolean isFirstLoad;
+        private ForecastStore mForecastStore;
+        private ForecastRecord mForecast;
         float mTempYOffset;
         float mTempXOffsetHigh;
         private float mTempXOffsetLow;
@@ -153,10 +213,36 @@ public class WatchFace extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
         private Paint mIconPaint;
-        private Bitmap mGrayBackgroundBitmap;
         private Bitmap mBitMap;
-        private Node mNode;
-        private SimpleDateFormat mCalendarFormat;
+        // Digest of the asset mBitMap was decoded from, to skip decoding the same image again
+        private String mBitmapDigest;
+        // A bitmap no longer on screen, for the next decode to reuse
+        private Bitmap mReusableBitmap;
+        private LoadBitmapAsyncTask mLoadBitmapTask;
+        // The weather image scaled to the surface with each mode's filter already applied
+        private Bitmap mInteractiveBackground;
+        private Bitmap mAmbientBackground;
+        // Everything but the time, redrawn only when the data, date, mode or layout change
+        private Bitmap mTextLayer;
+        private boolean mTextLayerDirty = true;
+        private int mSurfaceWidth;
+        private int mSurfaceHeight;
+        // Whether seconds are shown in interactive mode; when they aren't we only wake once a
+        // minute
+        private boolean mShowSeconds;
+        // The second and minute last drawn, to tell which elements a wakeup changes
+        private long mDrawnSecond = -1;
+        private long mDrawnMinute = -1;
+        // When the phone sent the data waiting to be drawn, to measure how long it took to show
+        private long mPendingDataSentTime;
+        // Reachable nodes with the phone app, kept current by the capability listener while
+        // connected
+        private final Set<String> mCapableNodeIds = new HashSet<>();
+        private boolean mCapableNodesKnown;
+        // Nodes already asked for data since connecting, so that each is only asked once
+        private final Set<String> mRequestedNodeIds = new HashSet<>();
+        private final TimeText mTimeText = new TimeText();
+        private DateText mDateText;
         private float mDateXOffset;
         private float mDateYOffset;
         private float mDescXOffset;
@@ -171,7 +257,6 @@ public class WatchFace extends CanvasWatchFaceService {
             mTempHigh = "-";
             mTempLow = "-";
             mDesc = "-";
-            isFirstLoad = true;
             setWatchFaceStyle(new WatchFaceStyle.Builder(WatchFace.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
@@ -181,7 +266,9 @@ public class WatchFace extends CanvasWatchFaceService {
             Resources resources = WatchFace.this.getResources();
             //mYOffset = resources.getDimension(R.dimen.digital_y_offset);
             mTempYOffset = resources.getDimension(R.dimen.temp_y_offset_high);
-            mCalendarFormat = new SimpleDateFormat("EEE, d MMM yyyy", Locale.getDefault());
+            mDateText = new DateText("EEE, d MMM yyyy", Locale.getDefault());
+            mShowSeconds = PreferenceManager.getDefaultSharedPreferences(WatchFace.this)
+                    .getBoolean(PREF_SHOW_SECONDS, true);
 
             initIconPaint();
             initGrayPaint();
@@ -208,6 +295,12 @@ public class WatchFace extends CanvasWatchFaceService {
 
             mCalendar = Calendar.getInstance();
 
+            // Show the forecast we already have straight away, and only ask the phone for one
+            // if it doesn't cover today
+            mForecastStore = new ForecastStore(WatchFace.this);
+            mForecast = mForecastStore.load();
+            isFirstLoad = !showForecastForToday();
+
             mGoogleApiClient = new GoogleApiClient.Builder(WatchFace.this)
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
@@ -223,6 +316,7 @@ public class WatchFace extends CanvasWatchFaceService {
             colorMatrix.setSaturation(0f);
             colorMatrix.setScale(scale, scale, scale, 1f);
             mIconPaint.setColorFilter(new ColorMatrixColorFilter(colorMatrix));// darken
+            mIconPaint.setFilterBitmap(true);
         }
 
         private void initGrayPaint() {
@@ -238,14 +332,113 @@ public class WatchFace extends CanvasWatchFaceService {
             mGrayPaint = new Paint();
             ColorMatrixColorFilter filter = new ColorMatrixColorFilter(colorMatrix);
             mGrayPaint.setColorFilter(filter);
+            mGrayPaint.setFilterBitmap(true);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            if (mLoadBitmapTask != null) {
+                mLoadBitmapTask.cancel(true);
+                mLoadBitmapTask = null;
+            }
+            releaseBackgroundLayers();
+            if (mTextLayer != null) {
+                mTextLayer.recycle();
+                mTextLayer = null;
+            }
             super.onDestroy();
         }
 
+        @Override
+        public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
+            super.onSurfaceChanged(holder, format, width, height);
+            if (width == mSurfaceWidth && height == mSurfaceHeight) {
+                return;
+            }
+            mSurfaceWidth = width;
+            mSurfaceHeight = height;
+            if (mTextLayer != null) {
+                mTextLayer.recycle();
+                mTextLayer = null;
+            }
+            mTextLayerDirty = true;
+            buildBackgroundLayers();
+        }
+
+        /**
+         * Bakes the weather image into one background per mode, scaled to fill the surface, so
+         * that drawing a frame is a plain blit instead of a filtered, scaled draw.  The low-bit
+         * and burn-in ambient modes draw plain black and need no layer.
+         */
+        private void buildBackgroundLayers() {
+            releaseBackgroundLayers();
+            if (mBitMap == null || mSurfaceWidth == 0 || mSurfaceHeight == 0) {
+                return;
+            }
+            Rect src = getCenterCropRect(mBitMap.getWidth(), mBitMap.getHeight());
+            mInteractiveBackground = bakeBackgroundLayer(src, mIconPaint);
+            mAmbientBackground = bakeBackgroundLayer(src, mGrayPaint);
+        }
+
+        private Bitmap bakeBackgroundLayer(Rect src, Paint paint) {
+            Bitmap layer = Bitmap.createBitmap(mSurfaceWidth, mSurfaceHeight,
+                    Bitmap.Config.RGB_565);
+            Canvas canvas = new Canvas(layer);
+            canvas.drawColor(Color.BLACK);
+            canvas.drawBitmap(mBitMap, src, new Rect(0, 0, mSurfaceWidth, mSurfaceHeight), paint);
+            return layer;
+        }
+
+        /**
+         * Returns the part of an image of the given size which fills the surface without
+         * distorting it.
+         */
+        private Rect getCenterCropRect(int width, int height) {
+            if (width * mSurfaceHeight > height * mSurfaceWidth) {
+                int cropWidth = height * mSurfaceWidth / mSurfaceHeight;
+                int left = (width - cropWidth) / 2;
+                return new Rect(left, 0, left + cropWidth, height);
+            } else {
+                int cropHeight = width * mSurfaceHeight / mSurfaceWidth;
+                int top = (height - cropHeight) / 2;
+                return new Rect(0, top, width, top + cropHeight);
+            }
+        }
+
+        private void releaseBackgroundLayers() {
+            if (mInteractiveBackground != null) {
+                mInteractiveBackground.recycle();
+                mInteractiveBackground = null;
+            }
+            if (mAmbientBackground != null) {
+                mAmbientBackground.recycle();
+                mAmbientBackground = null;
+            }
+        }
+
+        /**
+         * Redraws the date, description and temperatures into the text layer.
+         */
+        private void buildTextLayer(Rect bounds) {
+            if (mTextLayer == null) {
+                mTextLayer = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                        Bitmap.Config.ARGB_8888);
+            }
+            mTextLayer.eraseColor(Color.TRANSPARENT);
+            Canvas canvas = new Canvas(mTextLayer);
+            boolean antiAlias = !(mAmbient && mLowBitAmbient);
+            mDateTextPaint.setAntiAlias(antiAlias);
+            mDescriptionTextPaint.setAntiAlias(antiAlias);
+            mTempHighTextPaint.setAntiAlias(antiAlias);
+            mTempLowTextPaint.setAntiAlias(antiAlias);
+            canvas.drawText(mDateText.getText(), mDateXOffset, mDateYOffset, mDateTextPaint);
+            canvas.drawText(mDesc, mDescXOffset, mDescYOffset, mDescriptionTextPaint);
+            canvas.drawText(mTempHigh, mTempXOffsetHigh, mTempYOffset, mTempHighTextPaint);
+            canvas.drawText(mTempLow, mTempXOffsetLow, mTempYOffset, mTempLowTextPaint);
+            mTextLayerDirty = false;
+        }
+
         private Paint createTextPaint(int textColor, Typeface typeface) {
             Paint paint = new Paint();
             paint.setColor(textColor);
@@ -263,11 +456,19 @@ public class WatchFace extends CanvasWatchFaceService {
                 mGoogleApiClient.connect();
                 // Update time zone in case it changed while we weren't visible.
                 mCalendar.setTimeZone(TimeZone.getDefault());
+                mDateText.setTimeZone(TimeZone.getDefault());
                 invalidate();
             } else {
                 unregisterReceiver();
+                if (mGoogleApiClient.isConnected()) {
+                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                    Wearable.CapabilityApi.removeCapabilityListener(mGoogleApiClient, this,
+                            WatchFaceUtil.SUNSHINE_CAPABILITY);
+                }
                 mGoogleApiClient.disconnect();
-                Wearable.DataApi.removeListener(mGoogleApiClient, this);
+                // Without the listener the cached nodes would go stale
+                mCapableNodesKnown = false;
+                mRequestedNodeIds.clear();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -335,6 +536,7 @@ public class WatchFace extends CanvasWatchFaceService {
             mTempHighTextPaint.setTextSize(highTempTextSize);
             mDateTextPaint.setTextSize(dateTempTextSize);
             mDescriptionTextPaint.setTextSize(descTempTextSize);
+            mTextLayerDirty = true;
         }
 
         @Override
@@ -348,6 +550,7 @@ public class WatchFace extends CanvasWatchFaceService {
         @Override
         public void onTimeTick() {
             super.onTimeTick();
+            mEngineStats.recordWakeup(true);
             invalidate();
         }
 
@@ -358,6 +561,7 @@ public class WatchFace extends CanvasWatchFaceService {
                 mAmbient = inAmbientMode;
                 if (mLowBitAmbient) {
                     mTimeTextPaint.setAntiAlias(!inAmbientMode);
+                    mTextLayerDirty = true;
                 }
                 invalidate();
             }
@@ -368,8 +572,9 @@ public class WatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Captures tap event (and tap type) and toggles the background color if the user finishes
-         * a tap.
+         * Captures tap event (and tap type) and toggles whether seconds are shown if the user
+         * finishes a tap.  Only a completed tap changes what's on screen, so it's the only one
+         * that redraws.  In debug builds a tap near the top logs the engine stats instead.
          */
         @Override
         public void onTapCommand(int tapType, int x, int y, long eventTime) {
@@ -383,53 +588,83 @@ public class WatchFace extends CanvasWatchFaceService {
                     break;
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
-                    // TODO: Add code to handle the tap gesture.
-                    Toast.makeText(getApplicationContext(), R.string.message, Toast.LENGTH_SHORT)
+                    if (BuildConfig.DEBUG && y < mSurfaceHeight / DEBUG_TAP_AREA_DIVISOR) {
+                        logStats();
+                        Toast.makeText(getApplicationContext(), R.string.stats_logged,
+                                Toast.LENGTH_SHORT).show();
+                        break;
+                    }
+                    mShowSeconds = !mShowSeconds;
+                    PreferenceManager.getDefaultSharedPreferences(WatchFace.this).edit()
+                            .putBoolean(PREF_SHOW_SECONDS, mShowSeconds)
+                            .apply();
+                    Toast.makeText(getApplicationContext(), mShowSeconds
+                            ? R.string.seconds_shown : R.string.seconds_hidden, Toast.LENGTH_SHORT)
                             .show();
+                    invalidate();
+                    updateTimer();
                     break;
             }
-            invalidate();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            // Draw the background.
+            long frameStart = System.nanoTime();
 
-
-            if (mBitMap != null) {
-                if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
-                    canvas.drawColor(Color.BLACK);
-                } else if (mAmbient) {
-                    canvas.drawBitmap(mBitMap, 0, 0, mGrayPaint);
+            // Draw the background.
+            if (mAmbient && (mLowBitAmbient || mBurnInProtection)) {
+                canvas.drawColor(Color.BLACK);
+            } else if (mAmbient) {
+                if (mAmbientBackground != null) {
+                    canvas.drawBitmap(mAmbientBackground, 0, 0, null);
                 } else {
-                    canvas.drawBitmap(mBitMap, 0, 0, mIconPaint);
+                    canvas.drawColor(Color.BLACK);
                 }
             } else {
-                if (isInAmbientMode()) {
-                    canvas.drawColor(Color.BLACK);
+                if (mInteractiveBackground != null) {
+                    canvas.drawBitmap(mInteractiveBackground, 0, 0, null);
                 } else {
                     canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
                 }
             }
 
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
+            // Draw H:MM in ambient mode or H:MM:SS in interactive mode. The text is kept in
+            // reused buffers so that drawing a frame doesn't allocate.
             long now = System.currentTimeMillis();
             mCalendar.setTimeInMillis(now);
-            String text;
-            if (mAmbient){
-                text = String.format(Locale.getDefault(), "%d:%02d", mCalendar.get(Calendar.HOUR),
-                        mCalendar.get(Calendar.MINUTE));
-            } else {
-                text = String.format(Locale.getDefault(), "%d:%02d:%02d", mCalendar.get(Calendar.HOUR),
-                        mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
+            mDrawnSecond = now / DateUtils.SECOND_IN_MILLIS;
+            mDrawnMinute = now / DateUtils.MINUTE_IN_MILLIS;
+            mTimeText.update(mCalendar.get(Calendar.HOUR), mCalendar.get(Calendar.MINUTE),
+                    mCalendar.get(Calendar.SECOND), isShowingSeconds());
+            if (mDateText.update(mCalendar.get(Calendar.YEAR), mCalendar.get(Calendar.DAY_OF_YEAR),
+                    now)) {
+                // Move on to the new day's forecast, and ask the phone for more once the stored
+                // one has run out of days
+                mTextLayerDirty = true;
+                isFirstLoad = !showForecastForToday();
+                if (isFirstLoad && mGoogleApiClient.isConnected()) {
+                    // The phones asked for the old forecast may be asked again
+                    mRequestedNodeIds.clear();
+                    requestData();
+                }
             }
 
-            canvas.drawText(mCalendarFormat.format(mCalendar.getTime()), mDateXOffset, mDateYOffset, mDateTextPaint);
-            canvas.drawText(mDesc, mDescXOffset, mDescYOffset, mDescriptionTextPaint);
-            canvas.drawText(mTempHigh, mTempXOffsetHigh, mTempYOffset, mTempHighTextPaint);
-            canvas.drawText(mTempLow, mTempXOffsetLow, mTempYOffset, mTempLowTextPaint);
-            canvas.drawText(text, mXOffset, mYOffset, mTimeTextPaint);
+            if (mTextLayerDirty || mTextLayer == null) {
+                buildTextLayer(bounds);
+            }
+            canvas.drawBitmap(mTextLayer, 0, 0, null);
+            canvas.drawText(mTimeText.chars(), 0, mTimeText.length(), mXOffset, mYOffset,
+                    mTimeTextPaint);
+
+            mEngineStats.recordFrame(mAmbient, System.nanoTime() - frameStart);
+            if (mPendingDataSentTime > 0) {
+                mEngineStats.recordDataLatency(now - mPendingDataSentTime);
+                mPendingDataSentTime = 0;
+            }
+        }
 
+        private boolean isShowingSeconds() {
+            return mShowSeconds && !mAmbient;
         }
 
         /**
@@ -452,40 +687,114 @@ public class WatchFace extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time periodically in interactive mode.  The timer wakes at the
+         * next boundary of the smallest unit on screen, and only redraws if that wakeup changed
+         * something that is displayed.
          */
         private void handleUpdateTimeMessage() {
-            invalidate();
+            long timeMs = System.currentTimeMillis();
+            boolean changed = timeMs / DateUtils.MINUTE_IN_MILLIS != mDrawnMinute
+                    || (isShowingSeconds() && timeMs / DateUtils.SECOND_IN_MILLIS != mDrawnSecond);
+            mEngineStats.recordWakeup(changed);
+            if (changed) {
+                invalidate();
+            }
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
+                long updateRateMs = mShowSeconds
+                        ? INTERACTIVE_UPDATE_RATE_MS : INTERACTIVE_NO_SECONDS_UPDATE_RATE_MS;
+                long delayMs = updateRateMs - (timeMs % updateRateMs);
                 mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
             }
         }
 
-        private void initNode() {
-            Wearable.NodeApi.getConnectedNodes(mGoogleApiClient).setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
-                @Override
-                public void onResult(@NonNull NodeApi.GetConnectedNodesResult nodes) {
-                    for (Node node : nodes.getNodes()) {
-                        mNode = node;
-                        Log.d(LOG_TAG, "Sending message " + mNode.getId());
-                    }
-                    Wearable.MessageApi.sendMessage(mGoogleApiClient, mNode.getId(), WatchFaceUtil.INIT_SUNSHINE_PATH, null);
+        /**
+         * Asks every reachable phone with the app for its data.  The capable nodes are looked up
+         * once per connection and then kept current by {@link #onCapabilityChanged}.
+         */
+        private void requestData() {
+            if (mCapableNodesKnown) {
+                sendInitMessages();
+                return;
+            }
+            Wearable.CapabilityApi.getCapability(mGoogleApiClient,
+                    WatchFaceUtil.SUNSHINE_CAPABILITY, CapabilityApi.FILTER_REACHABLE)
+                    .setResultCallback(new ResultCallback<CapabilityApi.GetCapabilityResult>() {
+                        @Override
+                        public void onResult(@NonNull CapabilityApi.GetCapabilityResult result) {
+                            if (!result.getStatus().isSuccess()) {
+                                Log.w(LOG_TAG, "Capability lookup failed: " + result.getStatus());
+                                return;
+                            }
+                            updateCapableNodes(result.getCapability());
+                        }
+                    });
+        }
+
+        @Override  // CapabilityApi.CapabilityListener
+        public void onCapabilityChanged(CapabilityInfo capabilityInfo) {
+            updateCapableNodes(capabilityInfo);
+        }
+
+        private void updateCapableNodes(CapabilityInfo capabilityInfo) {
+            mCapableNodeIds.clear();
+            for (Node node : capabilityInfo.getNodes()) {
+                mCapableNodeIds.add(node.getId());
+            }
+            mCapableNodesKnown = true;
+            // A node that went away is asked again if it comes back
+            mRequestedNodeIds.retainAll(mCapableNodeIds);
+            Log.d(LOG_TAG, "Capable nodes: " + mCapableNodeIds);
+            if (isFirstLoad) {
+                sendInitMessages();
+            }
+        }
 
+        /**
+         * Sends the init message to the capable nodes not asked yet.  Every phone answers with
+         * the same data items, which are de-duplicated when they arrive.
+         */
+        private void sendInitMessages() {
+            if (mCapableNodeIds.isEmpty()) {
+                Log.d(LOG_TAG, "No phone with the app is reachable yet");
+                return;
+            }
+            for (String nodeId : mCapableNodeIds) {
+                if (mRequestedNodeIds.add(nodeId)) {
+                    Log.d(LOG_TAG, "Sending message " + nodeId);
+                    Wearable.MessageApi.sendMessage(mGoogleApiClient, nodeId,
+                            WatchFaceUtil.INIT_SUNSHINE_PATH, null);
                 }
-            });
+            }
         }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
         public void onConnected(Bundle connectionHint) {
             Log.d(LOG_TAG, "onConnected: ");
             Wearable.DataApi.addListener(mGoogleApiClient, this);
+            Wearable.CapabilityApi.addCapabilityListener(mGoogleApiClient, this,
+                    WatchFaceUtil.SUNSHINE_CAPABILITY);
             Log.d(LOG_TAG, "first load?" + isFirstLoad);
-            if (isFirstLoad) {
-                initNode();
-            }
+            loadCurrentDataItems();
+        }
+
+        /**
+         * The phone only sends data when it changes, so catch up on the items it synced while we
+         * weren't listening, and only ask it for data if we still have nothing for today.
+         */
+        private void loadCurrentDataItems() {
+            Wearable.DataApi.getDataItems(mGoogleApiClient).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer dataItems) {
+                            for (DataItem dataItem : dataItems) {
+                                handleDataItem(dataItem, false);
+                            }
+                            dataItems.release();
+                            if (isFirstLoad) {
+                                requestData();
+                            }
+                        }
+                    });
         }
 
         @Override  // GoogleApiClient.ConnectionCallbacks
@@ -501,34 +810,147 @@ public class WatchFace extends CanvasWatchFaceService {
         @Override
         public void onDataChanged(DataEventBuffer dataEvents) {
             Log.d(LOG_TAG, "onDataChanged");
+            long start = System.nanoTime();
             for (DataEvent dataEvent : dataEvents) {
                 if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
                     continue;
                 }
-                DataItem dataItem = dataEvent.getDataItem();
-                Log.d(LOG_TAG, dataItem.getUri().getPath());
-                if (!dataItem.getUri().getPath().equals(WatchFaceUtil.SUNSHINE_PATH)) {
-                    continue;
+                handleDataItem(dataEvent.getDataItem(), true);
+            }
+            mEngineStats.recordDataEvent(System.nanoTime() - start);
+        }
+
+        /**
+         * @param live whether the item just arrived, as opposed to being read back on connect
+         */
+        private void handleDataItem(DataItem dataItem, boolean live) {
+            String path = dataItem.getUri().getPath();
+            Log.d(LOG_TAG, path);
+            if (path.equals(WatchFaceUtil.SUNSHINE_PATH)) {
+                DataMap tempDataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+                if (updateUiForTempDataMap(tempDataMap) && live) {
+                    mPendingDataSentTime = tempDataMap.getLong(WatchFaceUtil.SENT_TIME, 0);
                 }
+                // An old item, or one that doesn't reach today, still leaves us without data
+                isFirstLoad = !showForecastForToday();
+            } else if (path.equals(WatchFaceUtil.SUNSHINE_IMAGE_PATH)) {
+                DataMap imageDataMap = DataMapItem.fromDataItem(dataItem).getDataMap();
+                loadBackground(imageDataMap.getAsset(WatchFaceUtil.WEATHER_ICON));
+            }
+        }
 
-                DataMapItem dataMapItem = DataMapItem.fromDataItem(dataItem);
-                DataMap tempDataMap = dataMapItem.getDataMap();
-                updateUiForTempDataMap(tempDataMap);
-                isFirstLoad = false;
+        /**
+         * Shows today's entry of the stored forecast, or placeholders if it has none, rather
+         * than leave another day's on screen.
+         *
+         * @return false if there is no forecast for today
+         */
+        private boolean showForecastForToday() {
+            ForecastRecord.Day today = null;
+            if (mForecast != null) {
+                long now = System.currentTimeMillis();
+                Time time = new Time();
+                time.set(now);
+                today = mForecast.getDay(Time.getJulianDay(now, time.gmtoff));
+            }
+            if (today == null) {
+                mTempHigh = "-";
+                mTempLow = "-";
+                mDesc = "-";
+                mTextLayerDirty = true;
+                return false;
             }
+            mTempHigh = getString(R.string.format_temperature, today.getHigh());
+            mTempLow = getString(R.string.format_temperature, today.getLow());
+            mDesc = WeatherConditions.getStringForWeatherCondition(WatchFace.this,
+                    today.getWeatherId());
+            mTextLayerDirty = true;
+            return true;
         }
 
-        private void updateUiForTempDataMap(DataMap tempDataMap) {
-            mTempHigh = getString(R.string.format_temperature, tempDataMap.getDouble(WatchFaceUtil.TEMP_HIGH, 0));
-            mTempLow = getString(R.string.format_temperature, tempDataMap.getDouble(WatchFaceUtil.TEMP_LOW, 0));
-            mDesc = tempDataMap.getString(WatchFaceUtil.WEATHER_DESC, "");
-            Asset asset = tempDataMap.getAsset(WatchFaceUtil.WEATHER_ICON);
-            new LoadBitmapAsyncTask().execute(asset);
-            Log.d(LOG_TAG, "updateUiForTempDataMap: " + tempDataMap.toString());
+        /**
+         * @return whether the data map had a new forecast
+         */
+        private boolean updateUiForTempDataMap(DataMap tempDataMap) {
+            byte[] forecast = tempDataMap.getByteArray(WatchFaceUtil.FORECAST);
+            if (forecast == null) {
+                return false;
+            }
+            ForecastRecord record;
+            try {
+                record = ForecastCodec.decode(forecast);
+            } catch (IOException e) {
+                Log.w(LOG_TAG, "Ignoring unreadable forecast", e);
+                return false;
+            }
+            // Each phone asked for data answers with its own copy, usually the same
+            if (record.equals(mForecast)) {
+                Log.d(LOG_TAG, "Forecast unchanged");
+                return false;
+            }
+            mForecast = record;
+            mForecastStore.save(forecast);
+            showForecastForToday();
+            Log.d(LOG_TAG, "updateUiForTempDataMap: " + mForecast);
             invalidate();
+            return true;
+        }
+
+        /**
+         * Decodes the asset into the background, unless it is the image already on screen or
+         * already being decoded.  A decode still running for an older asset is cancelled.
+         */
+        private void loadBackground(Asset asset) {
+            if (asset == null) {
+                return;
+            }
+            String digest = asset.getDigest();
+            if (digest != null && (digest.equals(mBitmapDigest)
+                    || (mLoadBitmapTask != null && digest.equals(mLoadBitmapTask.mDigest)))) {
+                Log.d(LOG_TAG, "Background unchanged, skipping decode");
+                return;
+            }
+            if (mLoadBitmapTask != null) {
+                mLoadBitmapTask.cancel(true);
+            }
+            int width = mSurfaceWidth;
+            int height = mSurfaceHeight;
+            if (width == 0 || height == 0) {
+                DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
+                width = displayMetrics.widthPixels;
+                height = displayMetrics.heightPixels;
+            }
+            // Hand the spare bitmap to the task so that it can decode into it
+            mLoadBitmapTask = new LoadBitmapAsyncTask(digest, width, height, mReusableBitmap);
+            mReusableBitmap = null;
+            mLoadBitmapTask.execute(asset);
+        }
+
+        /**
+         * Keeps a bitmap that is no longer on screen for the next decode to reuse.
+         */
+        private void recycleBitmap(Bitmap bitmap) {
+            if (bitmap == null || bitmap == mBitMap) {
+                return;
+            }
+            if (mReusableBitmap != null && mReusableBitmap != bitmap) {
+                mReusableBitmap.recycle();
+            }
+            mReusableBitmap = bitmap;
         }
 
         private class LoadBitmapAsyncTask extends AsyncTask<Asset, Void, Bitmap> {
+            final String mDigest;
+            private final int mTargetWidth;
+            private final int mTargetHeight;
+            private final Bitmap mReusable;
+
+            LoadBitmapAsyncTask(String digest, int targetWidth, int targetHeight, Bitmap reusable) {
+                mDigest = digest;
+                mTargetWidth = targetWidth;
+                mTargetHeight = targetHeight;
+                mReusable = reusable;
+            }
 
             @Override
             protected Bitmap doInBackground(Asset... params) {
@@ -536,15 +958,24 @@ public class WatchFace extends CanvasWatchFaceService {
                 if (params.length > 0) {
 
                     Asset asset = params[0];
+                    long start = System.nanoTime();
 
+                    // Don't hold on to a pool thread forever if the asset never arrives
                     InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                            mGoogleApiClient, asset).await().getInputStream();
+                            mGoogleApiClient, asset).await(ASSET_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                            .getInputStream();
 
                     if (assetInputStream == null) {
                         Log.w(LOG_TAG, "Requested an unknown Asset.");
                         return null;
                     }
-                    return BitmapFactory.decodeStream(assetInputStream);
+                    byte[] data = readFully(assetInputStream);
+                    if (data == null || isCancelled()) {
+                        return null;
+                    }
+                    Bitmap bitmap = decodeSampled(data);
+                    mEngineStats.recordDecode(System.nanoTime() - start);
+                    return bitmap;
 
                 } else {
                     Log.e(LOG_TAG, "Asset must be non-null");
@@ -552,14 +983,92 @@ public class WatchFace extends CanvasWatchFaceService {
                 }
             }
 
+            /**
+             * Decodes the image at the smallest power of two sample size that still covers the
+             * target size, into the reusable bitmap when it is large enough.
+             */
+            private Bitmap decodeSampled(byte[] data) {
+                BitmapFactory.Options options = new BitmapFactory.Options();
+                options.inJustDecodeBounds = true;
+                BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (options.outWidth <= 0 || options.outHeight <= 0) {
+                    return null;
+                }
+
+                int sampleSize = 1;
+                while (options.outWidth / (sampleSize * 2) >= mTargetWidth
+                        && options.outHeight / (sampleSize * 2) >= mTargetHeight) {
+                    sampleSize *= 2;
+                }
+                options.inJustDecodeBounds = false;
+                options.inSampleSize = sampleSize;
+                options.inMutable = true;
+                if (mReusable != null && !mReusable.isRecycled()) {
+                    int width = (options.outWidth + sampleSize - 1) / sampleSize;
+                    int height = (options.outHeight + sampleSize - 1) / sampleSize;
+                    if (mReusable.getAllocationByteCount() >= width * height * 4) {
+                        options.inBitmap = mReusable;
+                    }
+                }
+                try {
+                    return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                } catch (IllegalArgumentException e) {
+                    // The reusable bitmap didn't fit after all, decode into a new one
+                    options.inBitmap = null;
+                    return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                }
+            }
+
+            private byte[] readFully(InputStream inputStream) {
+                ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                try {
+                    int read;
+                    while ((read = inputStream.read(buffer)) != -1) {
+                        if (isCancelled()) {
+                            return null;
+                        }
+                        outputStream.write(buffer, 0, read);
+                    }
+                    return outputStream.toByteArray();
+                } catch (IOException e) {
+                    Log.e(LOG_TAG, "Error reading asset", e);
+                    return null;
+                } finally {
+                    try {
+                        inputStream.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                }
+            }
+
             @Override
             protected void onPostExecute(Bitmap bitmap) {
-
+                if (mLoadBitmapTask == this) {
+                    mLoadBitmapTask = null;
+                }
                 if (bitmap != null) {
                     Log.d(LOG_TAG, "Setting bitmap");
+                    Bitmap previous = mBitMap;
                     mBitMap = bitmap;
+                    mBitmapDigest = mDigest;
+                    buildBackgroundLayers();
+                    recycleBitmap(previous);
                     invalidate();
                 }
+                if (bitmap != mReusable) {
+                    recycleBitmap(mReusable);
+                }
+            }
+
+            @Override
+            protected void onCancelled(Bitmap bitmap) {
+                if (mLoadBitmapTask == this) {
+                    mLoadBitmapTask = null;
+                }
+                // Whatever was decoded can be decoded into again
+                recycleBitmap(bitmap != null ? bitmap : mReusable);
             }
         }
     }
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.sunshine.app;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WatchFaceTextTest {
+    private static final int FRAMES = 24 * 60 * 60;
+    private static final int WARM_UP_DAYS = 5;
+
+    @Test
+    public void testTimeText() {
+        TimeText timeText = new TimeText();
+        assertTrue(timeText.update(9, 5, 7, true));
+        assertEquals("9:05:07", timeText.toString());
+        assertFalse("Same time should not change the text", timeText.update(9, 5, 7, true));
+
+        assertTrue(timeText.update(11, 59, 0, true));
+        assertEquals("11:59:00", timeText.toString());
+
+        assertTrue(timeText.update(11, 59, 0, false));
+        assertEquals("11:59", timeText.toString());
+        assertFalse("Seconds should be ignored when they are not shown",
+                timeText.update(11, 59, 30, false));
+        assertEquals(5, timeText.length());
+    }
+
+    @Test
+    public void testDateText() {
+        DateText dateText = new DateText("d MMM yyyy", Locale.US);
+        dateText.setTimeZone(TimeZone.getTimeZone("UTC"));
+        // 1 Jan 2015, 00:00 UTC
+        long time = 1420070400000L;
+        assertTrue(dateText.update(2015, 1, time));
+        assertEquals("1 Jan 2015", dateText.getText());
+        assertFalse("Same day should not format again", dateText.update(2015, 1, time + 1000));
+        assertTrue(dateText.update(2015, 2, time + 24 * 60 * 60 * 1000));
+        assertEquals("2 Jan 2015", dateText.getText());
+    }
+
+    /**
+     * Runs a day's worth of once a second frames through the formatting core and checks that
+     * only the day rollover allocates.
+     */
+    @Test
+    public void testFramesDoNotAllocate() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean allocationBean =
+                (com.sun.management.ThreadMXBean) threadBean;
+        Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+        allocationBean.setThreadAllocatedMemoryEnabled(true);
+        long threadId = Thread.currentThread().getId();
+
+        TimeText timeText = new TimeText();
+        DateText dateText = new DateText("EEE, d MMM yyyy", Locale.US);
+        dateText.update(2015, 1, 1420070400000L);
+        // Warm up so that class loading and compilation aren't counted
+        for (int i = 0; i < WARM_UP_DAYS; i++) {
+            renderDay(timeText, dateText);
+        }
+
+        // Reading the counter can allocate itself, so measure that first and leave it out
+        long start = allocationBean.getThreadAllocatedBytes(threadId);
+        long before = allocationBean.getThreadAllocatedBytes(threadId);
+        long overhead = before - start;
+        int checksum = renderDay(timeText, dateText);
+        long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before - overhead;
+
+        assertTrue(checksum > 0);
+        assertEquals("Formatting a frame should not allocate", 0, allocated);
+    }
+
+    private static int renderDay(TimeText timeText, DateText dateText) {
+        int checksum = 0;
+        for (int frame = 0; frame < FRAMES; frame++) {
+            int seconds = frame % 60;
+            int minutes = (frame / 60) % 60;
+            int hours = (frame / 3600) % 12;
+            timeText.update(hours, minutes, seconds, true);
+            dateText.update(2015, 1, 1420070400000L);
+            checksum += timeText.chars()[timeText.length() - 1];
+        }
+        return checksum;
+    }
+}